@@ -0,0 +1,64 @@
+package org.makeacake;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One tick of the alert dispatcher: a burst of alerts spread over a few chunks, then the flush, against a
+ * world holding the given number of players, a quarter of them within the 15 block alert radius.
+ * Dedup is off so every flush has recipients to look up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class BroadcastBenchmark {
+
+    private static final Component MESSAGE = Component.text("Explosion with unknown source blocked");
+    private static final Settings.Alerts SETTINGS = new Settings.Alerts(15, 0, 0);
+
+    @Param({"0", "10", "100"})
+    public int players;
+
+    // Alerts submitted per tick, 1 is a lone cancelled explosion, 64 unknown TNT spam
+    @Param({"1", "64"})
+    public int burst;
+
+    private final LongAdder received = new LongAdder();
+    private final AlertDispatcher dispatcher = new AlertDispatcher(null);
+    private final List<Player> online = new ArrayList<>();
+    private Location[] origins;
+
+    @Setup
+    public void setUp() {
+        World world = BukkitStubs.world(online);
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < players; i++) {
+            double distance = i % 4 == 0 ? random.nextDouble(14) : 20 + random.nextDouble(200);
+            online.add(BukkitStubs.player("Player" + i, new Location(world, distance, 64, 0), received));
+        }
+        origins = new Location[burst];
+        for (int i = 0; i < burst; i++) origins[i] = new Location(world, (i % 4) * 16, 64, 0);
+    }
+
+    @Benchmark
+    public void broadcast() {
+        for (Location origin : origins) dispatcher.submit(origin, MESSAGE);
+        dispatcher.flush(SETTINGS, online);
+    }
+}
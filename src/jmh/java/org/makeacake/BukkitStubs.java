@@ -0,0 +1,141 @@
+package org.makeacake;
+
+import io.papermc.paper.threadedregions.scheduler.EntityScheduler;
+import net.coreprotect.CoreProtectAPI;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Just enough of the Bukkit API for the benchmarks to run without a server. Interfaces are backed by
+ * dynamic proxies answering the handful of methods the plugin calls; everything else returns a default.
+ */
+final class BukkitStubs {
+
+    private static final Map<Class<?>, Object> DEFAULTS = Map.of(
+            boolean.class, false, byte.class, (byte) 0, short.class, (short) 0, char.class, (char) 0,
+            int.class, 0, long.class, 0L, float.class, 0f, double.class, 0d);
+
+    // Entity tasks run inline, the benchmarks own every entity they create
+    static final EntityScheduler ENTITY_SCHEDULER = stub(EntityScheduler.class, (proxy, method, args) -> {
+        if (method.getName().equals("run") && args[1] instanceof Consumer<?> consumer) {
+            @SuppressWarnings("unchecked")
+            Consumer<Object> task = (Consumer<Object>) consumer;
+            task.accept(null);
+            return null;
+        }
+        if (method.getName().equals("execute") && args[1] instanceof Runnable runnable) {
+            runnable.run();
+            return true;
+        }
+        return fallback(proxy, method.getName(), method.getReturnType(), args);
+    });
+
+    private BukkitStubs() {
+    }
+
+    static World world(List<Player> players) {
+        UUID uid = UUID.randomUUID();
+        return stub(World.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getUID" -> uid;
+            case "getName" -> "world";
+            case "getNearbyEntities" -> nearby(players, (Location) args[0], (double) args[1], (double) args[2], (double) args[3],
+                    args.length > 4 ? (Predicate<?>) args[4] : null);
+            default -> fallback(proxy, method.getName(), method.getReturnType(), args);
+        });
+    }
+
+    static Block block(World world, int x, int y, int z, Material type) {
+        return stub(Block.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getWorld" -> world;
+            case "getX" -> x;
+            case "getY" -> y;
+            case "getZ" -> z;
+            case "getType" -> type;
+            case "getLocation" -> new Location(world, x, y, z);
+            default -> fallback(proxy, method.getName(), method.getReturnType(), args);
+        });
+    }
+
+    static Player player(String name, Location location, LongAdder received) {
+        UUID uuid = UUID.randomUUID();
+        return stub(Player.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getName" -> name;
+            case "getUniqueId" -> uuid;
+            case "getWorld" -> location.getWorld();
+            case "getLocation" -> location;
+            case "getScheduler" -> ENTITY_SCHEDULER;
+            case "sendMessage" -> {
+                received.increment();
+                yield null;
+            }
+            default -> fallback(proxy, method.getName(), method.getReturnType(), args);
+        });
+    }
+
+    static Entity entity(String name) {
+        return stub(Entity.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getName" -> name;
+            default -> fallback(proxy, method.getName(), method.getReturnType(), args);
+        });
+    }
+
+    // Swallows what the pipeline hands it, only counting, so the benchmark sees the plugin's cost and not CoreProtect's
+    static final class CountingCoreProtect extends CoreProtectAPI {
+        final LongAdder removals = new LongAdder();
+
+        @Override
+        public boolean logRemoval(String user, Location location, Material type, BlockData blockData) {
+            removals.increment();
+            return true;
+        }
+    }
+
+    private static List<Entity> nearby(List<Player> players, Location center, double dx, double dy, double dz, Predicate<?> filter) {
+        @SuppressWarnings("unchecked")
+        Predicate<Entity> predicate = (Predicate<Entity>) filter;
+        List<Entity> found = new ArrayList<>();
+        for (Player player : players) {
+            Location at = player.getLocation();
+            if (Math.abs(at.getX() - center.getX()) > dx || Math.abs(at.getY() - center.getY()) > dy
+                    || Math.abs(at.getZ() - center.getZ()) > dz) continue;
+            if (predicate == null || predicate.test(player)) found.add(player);
+        }
+        return found;
+    }
+
+    static Object fallback(Object proxy, String name, Class<?> returnType, Object[] args) {
+        return switch (name) {
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            case "toString" -> "stub@" + Integer.toHexString(System.identityHashCode(proxy));
+            default -> returnType.isPrimitive() ? DEFAULTS.get(returnType)
+                    : returnType.isArray() ? Array.newInstance(returnType.getComponentType(), 0)
+                    : Collection.class.isAssignableFrom(returnType) ? List.of() : null;
+        };
+    }
+
+    static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(BukkitStubs.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    static Object stub(InvocationHandler handler, Class<?>... types) {
+        return Proxy.newProxyInstance(BukkitStubs.class.getClassLoader(), types, handler);
+    }
+}
@@ -0,0 +1,85 @@
+package org.makeacake;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Tick-thread cost of attributing one explosion: composing the reason and capturing the block list for the
+ * logging pipeline, then either handing the chain on through ExplosionChains as CPTNTExt.logExplosion does,
+ * or caching every destroyed block the way attributions used to hop from one TNT to the next.
+ * CoreProtect is a counting stub and the whole crater is logged inline, so the score is the handler's worst case.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class ExplosionAttributionBenchmark {
+
+    @Param({"10", "100", "1000", "5000"})
+    public int blocks;
+
+    private final ReasonDictionary reasons = new ReasonDictionary();
+    private final ExplosionChains chains = new ExplosionChains();
+    private final BukkitStubs.CountingCoreProtect coreProtect = new BukkitStubs.CountingCoreProtect();
+    private LocationStore store;
+    private LogPipeline pipeline;
+    private World world;
+    private List<Block> blockList;
+    private int track;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        world = BukkitStubs.world(List.of());
+        store = new LocationStore(200_000, 1, TimeUnit.HOURS);
+        pipeline = new LogPipeline(null, coreProtect, 256, Integer.MAX_VALUE, Logger.getLogger("bench"));
+        track = reasons.actor("Steve");
+        // Roughly spherical crater around the origin, the shape a real blockList has
+        blockList = new ArrayList<>(blocks);
+        int radius = (int) Math.ceil(Math.cbrt(blocks * 3 / (4 * Math.PI))) + 1;
+        for (int x = -radius; x <= radius && blockList.size() < blocks; x++) {
+            for (int y = -radius; y <= radius && blockList.size() < blocks; y++) {
+                for (int z = -radius; z <= radius && blockList.size() < blocks; z++) {
+                    if (x * x + y * y + z * z <= radius * radius) blockList.add(BukkitStubs.block(world, x, 64 + y, z, Material.STONE));
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Benchmark
+    public int chained() {
+        int reason = reasons.compose("#tnt-", track);
+        pipeline.submitRemovals(reasons.name(reason), blockList);
+        chains.exploded(null, track, blockList);
+        return reason;
+    }
+
+    @Benchmark
+    public int perBlockCache() {
+        int reason = reasons.compose("#tnt-", track);
+        pipeline.submitRemovals(reasons.name(reason), blockList);
+        for (Block block : blockList) {
+            store.put(block.getWorld(), block.getX(), block.getY(), block.getZ(), reason);
+        }
+        return reason;
+    }
+}
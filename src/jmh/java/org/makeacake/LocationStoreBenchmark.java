@@ -0,0 +1,169 @@
+package org.makeacake;
+
+import org.bukkit.World;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Position packing and block store put/get. The store is shared; every benchmark thread works in its own
+ * far-away area, the way each Folia region thread only touches the shards it owns. With the cold tier the
+ * on-heap cap is far below the working set, so most lookups promote from off-heap and demote another entry.
+ *
+ * The shared variants put all threads in one area instead, interleaved shard by shard, like neighbouring regions
+ * around a busy spot: they share the world's shard index, the cold tier and adjacent shards' cache lines. Threads
+ * still never write the same shard, a shard has one owner and is not locked.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocationStoreBenchmark {
+
+    private static final int POSITIONS = 1 << 16;
+
+    @State(Scope.Benchmark)
+    public static class Store {
+        @Param({"hot", "cold"})
+        public String tiers;
+
+        final ReasonDictionary reasons = new ReasonDictionary();
+        final AtomicInteger threads = new AtomicInteger();
+        LocationStore store;
+        World world;
+        int reason;
+
+        @Setup
+        public void setUp() {
+            world = BukkitStubs.world(List.of());
+            store = tiers.equals("cold")
+                    ? new LocationStore(8_192, 1, TimeUnit.HOURS, new ColdStore(64L << 20, 1, TimeUnit.HOURS))
+                    : new LocationStore(1_000_000, 1, TimeUnit.HOURS);
+            reason = reasons.compose("#tnt-", reasons.actor("Steve"));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Area {
+        // Blocks spread over a square of this many chunks per side, 16 is a busy TNT cannon, 256 a whole base
+        @Param({"16", "256"})
+        public int spreadChunks;
+
+        int[] xs;
+        int[] ys;
+        int[] zs;
+        int cursor;
+
+        @Setup
+        public void setUp(Store shared) {
+            int offset = shared.threads.getAndIncrement() * 100_000;
+            SplittableRandom random = new SplittableRandom(42 + offset);
+            int span = spreadChunks * 16;
+            xs = new int[POSITIONS];
+            ys = new int[POSITIONS];
+            zs = new int[POSITIONS];
+            for (int i = 0; i < POSITIONS; i++) {
+                xs[i] = offset + random.nextInt(span);
+                ys[i] = random.nextInt(-64, 320);
+                zs[i] = random.nextInt(span) - span / 2;
+                if ((i & 1) == 0) shared.store.put(shared.world, xs[i], ys[i], zs[i], shared.reason);
+            }
+        }
+
+        int next() {
+            return cursor = (cursor + 1) & (POSITIONS - 1);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SharedArea {
+        // One square of this many chunks per side for every thread, split into shards of 16x16 chunks
+        @Param({"64", "256"})
+        public int sharedChunks;
+
+        int[] xs;
+        int[] ys;
+        int[] zs;
+        int cursor;
+
+        @Setup
+        public void setUp(Store shared, ThreadParams thread) {
+            int shardsPerSide = Math.max(1, sharedChunks >> 4);
+            int owned = 0;
+            int[] shards = new int[shardsPerSide * shardsPerSide];
+            for (int shard = 0; shard < shards.length; shard++) {
+                if (shard % thread.getThreadCount() == thread.getThreadIndex()) shards[owned++] = shard;
+            }
+            SplittableRandom random = new SplittableRandom(42 + thread.getThreadIndex());
+            xs = new int[POSITIONS];
+            ys = new int[POSITIONS];
+            zs = new int[POSITIONS];
+            for (int i = 0; i < POSITIONS; i++) {
+                int shard = shards[random.nextInt(Math.max(1, owned))];
+                xs[i] = (shard / shardsPerSide) * 256 + random.nextInt(256);
+                ys[i] = random.nextInt(-64, 320);
+                zs[i] = (shard % shardsPerSide) * 256 + random.nextInt(256);
+                if ((i & 1) == 0) shared.store.put(shared.world, xs[i], ys[i], zs[i], shared.reason);
+            }
+        }
+
+        int next() {
+            return cursor = (cursor + 1) & (POSITIONS - 1);
+        }
+    }
+
+    @Benchmark
+    public long pack(Area area) {
+        int i = area.next();
+        return LocationStore.pack(area.xs[i], area.ys[i], area.zs[i]);
+    }
+
+    @Benchmark
+    public void put(Store shared, Area area) {
+        int i = area.next();
+        shared.store.put(shared.world, area.xs[i], area.ys[i], area.zs[i], shared.reason);
+    }
+
+    // Half the positions were seeded, so this is a 50% hit rate
+    @Benchmark
+    public int get(Store shared, Area area) {
+        int i = area.next();
+        return shared.store.get(shared.world, area.xs[i], area.ys[i], area.zs[i]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int getConcurrent(Store shared, Area area) {
+        return get(shared, area);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void putConcurrent(Store shared, Area area) {
+        put(shared, area);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int getConcurrentShared(Store shared, SharedArea area) {
+        int i = area.next();
+        return shared.store.get(shared.world, area.xs[i], area.ys[i], area.zs[i]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void putConcurrentShared(Store shared, SharedArea area) {
+        int i = area.next();
+        shared.store.put(shared.world, area.xs[i], area.ys[i], area.zs[i], shared.reason);
+    }
+}
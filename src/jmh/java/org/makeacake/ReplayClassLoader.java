@@ -0,0 +1,76 @@
+package org.makeacake;
+
+import io.papermc.paper.plugin.configuration.PluginMeta;
+import io.papermc.paper.plugin.provider.classloader.ConfiguredPluginClassLoader;
+import io.papermc.paper.plugin.provider.classloader.PluginClassLoaderGroup;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.logging.Logger;
+
+/**
+ * Stands in for the server's plugin class loader, the only place a JavaPlugin may be constructed from. The plugin's
+ * package is defined here again, the harness included so it sees the same classes as the plugin, everything else
+ * comes from the application class path. JavaPlugin's constructor hands the new instance to {@link #init(JavaPlugin)},
+ * which gives it a description and a data folder the way the server would.
+ */
+public final class ReplayClassLoader extends URLClassLoader implements ConfiguredPluginClassLoader {
+
+    private static final String PACKAGE = "org.makeacake.";
+
+    private final PluginDescriptionFile description = new PluginDescriptionFile("CPTNTExt", "replay", CPTNTExt.class.getName());
+    private final File dataFolder;
+    private JavaPlugin plugin;
+
+    public ReplayClassLoader(File dataFolder) {
+        super(new URL[]{
+                CPTNTExt.class.getProtectionDomain().getCodeSource().getLocation(),
+                ReplayClassLoader.class.getProtectionDomain().getCodeSource().getLocation()
+        }, ReplayClassLoader.class.getClassLoader());
+        this.dataFolder = dataFolder;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        // The loader itself and the plugin loader service stay shared with the application class path
+        if (!name.startsWith(PACKAGE) || name.equals(ReplayClassLoader.class.getName()) || name.equals(ReplayPluginLoader.class.getName())) {
+            return super.loadClass(name, resolve);
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> loaded = findLoadedClass(name);
+            if (loaded == null) loaded = findClass(name);
+            if (resolve) resolveClass(loaded);
+            return loaded;
+        }
+    }
+
+    @Override
+    public Class<?> loadClass(String name, boolean resolve, boolean checkGlobal, boolean checkLibraries) throws ClassNotFoundException {
+        return loadClass(name, resolve);
+    }
+
+    @Override
+    public void init(JavaPlugin plugin) {
+        this.plugin = plugin;
+        plugin.init(Bukkit.getServer(), description, dataFolder, new File(dataFolder, "CPTNTExt.jar"), this, description, Logger.getLogger("CPTNTExt"));
+    }
+
+    @Override
+    public PluginMeta getConfiguration() {
+        return description;
+    }
+
+    @Override
+    public JavaPlugin getPlugin() {
+        return plugin;
+    }
+
+    @Override
+    public PluginClassLoaderGroup getGroup() {
+        return null;
+    }
+}
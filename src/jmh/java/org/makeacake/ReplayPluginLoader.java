@@ -0,0 +1,48 @@
+package org.makeacake;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.PluginLoader;
+import org.bukkit.plugin.RegisteredListener;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The PluginLoader service JavaPlugin looks up when a plugin class loader initialises it. The replay never loads
+ * plugins from files, it only needs the lookup to succeed.
+ */
+public final class ReplayPluginLoader implements PluginLoader {
+
+    @Override
+    public Plugin loadPlugin(File file) {
+        throw new UnsupportedOperationException("The replay does not load plugins from files");
+    }
+
+    @Override
+    public PluginDescriptionFile getPluginDescription(File file) {
+        throw new UnsupportedOperationException("The replay does not load plugins from files");
+    }
+
+    @Override
+    public Pattern[] getPluginFileFilters() {
+        return new Pattern[0];
+    }
+
+    @Override
+    public Map<Class<? extends Event>, Set<RegisteredListener>> createRegisteredListeners(Listener listener, Plugin plugin) {
+        return Map.of();
+    }
+
+    @Override
+    public void enablePlugin(Plugin plugin) {
+    }
+
+    @Override
+    public void disablePlugin(Plugin plugin) {
+    }
+}
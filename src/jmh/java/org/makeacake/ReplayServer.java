@@ -0,0 +1,352 @@
+package org.makeacake;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.type.Bed;
+import org.bukkit.block.data.type.Dispenser;
+import org.bukkit.block.data.type.RespawnAnchor;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.projectiles.BlockProjectileSource;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * The slice of a server the handlers touch during a replay. Worlds are a map of the blocks the trace placed,
+ * burned and exploded; entities are rebuilt from what the trace saw of them. The plugin manager keeps the
+ * plugin's registrations for direct dispatch in priority order, region work runs inline (everything is owned
+ * by the replay thread) and global timers fire on the simulated tick.
+ */
+final class ReplayServer {
+
+    private static final Logger LOGGER = Logger.getLogger("Replay");
+
+    private final List<Registration> registrations = new ArrayList<>();
+    private final List<Periodic> periodic = new ArrayList<>();
+    private final Map<String, ReplayWorld> worlds = new LinkedHashMap<>();
+    private final Map<Integer, ReplayEntity> entities = new HashMap<>();
+    private final List<Player> players = new ArrayList<>();
+    private final Object pdc = BukkitStubs.stub((proxy, method, args) -> BukkitStubs.fallback(proxy, method.getName(), method.getReturnType(), args),
+            PersistentDataContainer.class);
+    private final LongAdder messages = new LongAdder();
+    private final boolean itemStacks;
+    private long tick;
+
+    final Server server;
+
+    ReplayServer() {
+        Object global = BukkitStubs.stub((proxy, method, args) -> switch (method.getName()) {
+            case "runAtFixedRate" -> {
+                @SuppressWarnings("unchecked")
+                Consumer<Object> task = (Consumer<Object>) args[1];
+                periodic.add(new Periodic(task, Math.max(1, (long) args[2]), Math.max(1, (long) args[3])));
+                yield null;
+            }
+            default -> runInline(proxy, method.getName(), method.getReturnType(), args);
+        }, io.papermc.paper.threadedregions.scheduler.GlobalRegionScheduler.class);
+        Object region = BukkitStubs.stub((proxy, method, args) -> runInline(proxy, method.getName(), method.getReturnType(), args),
+                io.papermc.paper.threadedregions.scheduler.RegionScheduler.class);
+        // Metrics file and the like, not part of what a replay measures
+        Object async = BukkitStubs.stub((proxy, method, args) -> BukkitStubs.fallback(proxy, method.getName(), method.getReturnType(), args),
+                io.papermc.paper.threadedregions.scheduler.AsyncScheduler.class);
+        PluginManager pluginManager = BukkitStubs.stub(PluginManager.class, (proxy, method, args) -> switch (method.getName()) {
+            case "registerEvent" -> {
+                register((Class<?>) args[0], (Listener) args[1], (EventPriority) args[2], (EventExecutor) args[3],
+                        args.length > 5 && (boolean) args[5]);
+                yield null;
+            }
+            case "callEvent" -> {
+                dispatch((Event) args[0]);
+                yield null;
+            }
+            default -> BukkitStubs.fallback(proxy, method.getName(), method.getReturnType(), args);
+        });
+        server = BukkitStubs.stub(Server.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getLogger" -> LOGGER;
+            case "getName", "getVersion", "getBukkitVersion", "getMinecraftVersion" -> "Replay";
+            case "getPluginManager" -> pluginManager;
+            case "isOwnedByCurrentRegion", "isPrimaryThread", "isGlobalTickThread" -> true;
+            case "getGlobalRegionScheduler" -> global;
+            case "getRegionScheduler" -> region;
+            case "getAsyncScheduler" -> async;
+            case "getWorlds" -> worlds.values().stream().map(world -> world.proxy).toList();
+            case "getWorld" -> findWorld(args[0]);
+            case "getOnlinePlayers" -> List.copyOf(players);
+            default -> BukkitStubs.fallback(proxy, method.getName(), method.getReturnType(), args);
+        });
+        itemStacks = probeItemStacks();
+    }
+
+    // Whether ItemStacks can be built without a running server, item frame events are skipped when they cannot
+    boolean supportsItemStacks() {
+        return itemStacks;
+    }
+
+    long messages() {
+        return messages.sum();
+    }
+
+    void dispatch(Event event) {
+        for (Registration registration : registrations) {
+            if (!registration.type.isInstance(event)) continue;
+            if (registration.ignoreCancelled && event instanceof Cancellable cancellable && cancellable.isCancelled()) continue;
+            try {
+                registration.executor.execute(registration.listener, event);
+            } catch (EventException ex) {
+                if (ex.getCause() instanceof RuntimeException cause) throw cause;
+                throw new IllegalStateException(ex.getCause() != null ? ex.getCause() : ex);
+            }
+        }
+    }
+
+    // Fires the global timers of every tick up to the given one
+    void advanceTo(long target) {
+        while (tick < target) {
+            tick++;
+            for (Periodic task : periodic) {
+                if (tick >= task.delay && (tick - task.delay) % task.period == 0) task.task.accept(null);
+            }
+        }
+    }
+
+    long tick() {
+        return tick;
+    }
+
+    ReplayWorld world(String name) {
+        return worlds.computeIfAbsent(name, ReplayWorld::new);
+    }
+
+    // Creates or updates the entity the trace saw
+    ReplayEntity entity(int id, String type, String name, String world, double x, double y, double z) {
+        ReplayEntity entity = entities.get(id);
+        if (entity == null) {
+            entity = new ReplayEntity(id, entityType(type), name);
+            entities.put(id, entity);
+            if (entity.type == EntityType.PLAYER) players.add((Player) entity.proxy);
+        }
+        entity.name = name;
+        entity.location = new Location(world(world).proxy, x, y, z);
+        return entity;
+    }
+
+    ReplayEntity entity(int id) {
+        return entities.get(id);
+    }
+
+    void removeEntity(int id) {
+        ReplayEntity entity = entities.remove(id);
+        if (entity != null && entity.type == EntityType.PLAYER) players.remove((Player) entity.proxy);
+    }
+
+    Object blockSource(Block block) {
+        return BukkitStubs.stub((proxy, method, args) -> switch (method.getName()) {
+            case "getBlock" -> block;
+            default -> BukkitStubs.fallback(proxy, method.getName(), method.getReturnType(), args);
+        }, BlockProjectileSource.class);
+    }
+
+    ItemStack item(Material material) {
+        return itemStacks && material != null ? new ItemStack(material) : null;
+    }
+
+    private void register(Class<?> type, Listener listener, EventPriority priority, EventExecutor executor, boolean ignoreCancelled) {
+        registrations.add(new Registration(type, listener, priority, executor, ignoreCancelled));
+        registrations.sort(Comparator.comparingInt(registration -> registration.priority.getSlot()));
+    }
+
+    private World findWorld(Object key) {
+        for (ReplayWorld world : worlds.values()) {
+            if (key.equals(world.uid) || key.equals(world.name)) return world.proxy;
+        }
+        return null;
+    }
+
+    private static Object runInline(Object proxy, String name, Class<?> returnType, Object[] args) {
+        if (args != null) {
+            Object last = args[args.length - 1];
+            if (last instanceof Runnable runnable) {
+                runnable.run();
+                return null;
+            }
+            for (Object arg : args) {
+                if (arg instanceof Consumer<?> consumer) {
+                    @SuppressWarnings("unchecked")
+                    Consumer<Object> task = (Consumer<Object>) consumer;
+                    task.accept(null);
+                    return null;
+                }
+            }
+        }
+        return BukkitStubs.fallback(proxy, name, returnType, args);
+    }
+
+    private static EntityType entityType(String name) {
+        try {
+            return EntityType.valueOf(name);
+        } catch (IllegalArgumentException ex) {
+            return EntityType.UNKNOWN;
+        }
+    }
+
+    private static boolean probeItemStacks() {
+        try {
+            return new ItemStack(Material.STONE).getType() == Material.STONE;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    private record Registration(Class<?> type, Listener listener, EventPriority priority, EventExecutor executor, boolean ignoreCancelled) {
+    }
+
+    private record Periodic(Consumer<Object> task, long delay, long period) {
+    }
+
+    final class ReplayWorld {
+        final String name;
+        final UUID uid = UUID.randomUUID();
+        final World proxy;
+        private final Map<Long, Material> types = new HashMap<>();
+        // Facing and bed part of directional blocks, part -1 for anything but beds
+        private final Map<Long, int[]> shapes = new HashMap<>();
+
+        ReplayWorld(String name) {
+            this.name = name;
+            this.proxy = BukkitStubs.stub(World.class, (proxy, method, args) -> switch (method.getName()) {
+                case "getUID" -> uid;
+                case "getName" -> name;
+                case "getBlockAt" -> args.length == 1
+                        ? block(((Location) args[0]).getBlockX(), ((Location) args[0]).getBlockY(), ((Location) args[0]).getBlockZ())
+                        : block((int) args[0], (int) args[1], (int) args[2]);
+                case "getSpawnLocation" -> new Location(this.proxy, 0, 64, 0);
+                default -> BukkitStubs.fallback(proxy, method.getName(), method.getReturnType(), args);
+            });
+        }
+
+        void set(int x, int y, int z, Material type) {
+            long key = LocationStore.pack(x, y, z);
+            shapes.remove(key);
+            if (type == null || type.isAir()) {
+                types.remove(key);
+            } else {
+                types.put(key, type);
+            }
+        }
+
+        void shape(int x, int y, int z, int facing, int part) {
+            shapes.put(LocationStore.pack(x, y, z), new int[]{facing, part});
+        }
+
+        Block block(int x, int y, int z) {
+            long key = LocationStore.pack(x, y, z);
+            return BukkitStubs.stub(Block.class, (proxy, method, args) -> switch (method.getName()) {
+                case "getWorld" -> this.proxy;
+                case "getX" -> x;
+                case "getY" -> y;
+                case "getZ" -> z;
+                case "getType" -> types.getOrDefault(key, Material.AIR);
+                case "isEmpty" -> !types.containsKey(key);
+                case "getBlockData" -> blockData(key);
+                case "getLocation" -> new Location(this.proxy, x, y, z);
+                case "hashCode" -> Long.hashCode(key);
+                case "equals" -> args[0] instanceof Block other && other.getWorld() == this.proxy
+                        && other.getX() == x && other.getY() == y && other.getZ() == z;
+                default -> BukkitStubs.fallback(proxy, method.getName(), method.getReturnType(), args);
+            });
+        }
+
+        private Object blockData(long key) {
+            Material type = types.getOrDefault(key, Material.AIR);
+            int[] directional = shapes.get(key);
+            Class<?> shape = directional == null ? (type == Material.RESPAWN_ANCHOR ? RespawnAnchor.class : BlockData.class)
+                    : directional[1] >= 0 ? Bed.class : Dispenser.class;
+            return BukkitStubs.stub((proxy, method, args) -> switch (method.getName()) {
+                case "getMaterial" -> type;
+                case "getFacing" -> BlockFace.values()[directional[0]];
+                case "getPart" -> Bed.Part.values()[directional[1]];
+                default -> BukkitStubs.fallback(proxy, method.getName(), method.getReturnType(), args);
+            }, shape);
+        }
+    }
+
+    final class ReplayEntity {
+        final int id;
+        final EntityType type;
+        final UUID uuid = UUID.randomUUID();
+        final Entity proxy;
+        String name;
+        Location location;
+        Object shooter;
+        ReplayEntity source;
+        ReplayEntity target;
+        Material framed;
+        boolean removed;
+
+        ReplayEntity(int id, EntityType type, String name) {
+            this.id = id;
+            this.type = type;
+            this.name = name;
+            Class<?> shape = type.getEntityClass() != null ? type.getEntityClass() : Entity.class;
+            this.proxy = (Entity) BukkitStubs.stub((proxy, method, args) -> switch (method.getName()) {
+                case "getEntityId" -> this.id;
+                case "getType" -> this.type;
+                case "getName" -> this.name;
+                case "getUniqueId" -> uuid;
+                case "getLocation" -> location.clone();
+                case "getWorld" -> location.getWorld();
+                case "getShooter" -> shooter;
+                case "getSource" -> source != null ? source.proxy : null;
+                case "getTarget" -> target != null ? target.proxy : null;
+                case "getItem" -> item(framed != null ? framed : Material.AIR);
+                case "getInventory" -> inventory();
+                case "getPersistentDataContainer" -> pdc;
+                case "getScheduler" -> BukkitStubs.ENTITY_SCHEDULER;
+                case "isValid" -> !removed;
+                case "isDead" -> removed;
+                case "remove" -> {
+                    removed = true;
+                    yield null;
+                }
+                case "sendMessage" -> {
+                    messages.increment();
+                    yield null;
+                }
+                default -> BukkitStubs.fallback(proxy, method.getName(), method.getReturnType(), args);
+            }, shape);
+        }
+
+        // Empty hands, a click on an empty frame reads as a rotation
+        private Object inventory() {
+            return BukkitStubs.stub(PlayerInventory.class, (proxy, method, args) -> switch (method.getName()) {
+                case "getItemInMainHand", "getItemInOffHand" -> item(Material.AIR);
+                default -> BukkitStubs.fallback(proxy, method.getName(), method.getReturnType(), args);
+            });
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package org.makeacake;
+
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
+import net.coreprotect.CoreProtectAPI;
+import org.bukkit.Bukkit;
+import org.bukkit.ExplosionResult;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.damage.DamageSource;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Hanging;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Projectile;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockDispenseEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockIgniteEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.entity.EntityRemoveEvent;
+import org.bukkit.event.entity.EntitySpawnEvent;
+import org.bukkit.event.entity.ProjectileHitEvent;
+import org.bukkit.event.entity.ProjectileLaunchEvent;
+import org.bukkit.event.hanging.HangingBreakEvent;
+import org.bukkit.event.player.PlayerInteractEntityEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.inventory.EquipmentSlot;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.Vector;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a trace written by {@code /cptntext trace} against the plugin's handlers without a server, see
+ * TraceRecorder for the format. Events are rebuilt on ReplayServer's stubs and dispatched in priority order the
+ * way the plugin manager would, global timers run on a tick derived from the recorded time and CoreProtect is a
+ * recording stub. Reports throughput, per-handler latency from the plugin's own timers and how many explosions
+ * were attributed to the same user as on the live server.
+ *
+ * Pace follows the recorded time scaled by --speed, 0 replays as fast as the handlers allow. Admission control
+ * and coalescing run on wall-clock windows, so a faster replay also loads those harder than the server was.
+ *
+ * ./gradlew replay -Ptrace=path/to/trace.bin [-Pspeed=10]
+ */
+public final class TraceReplay {
+
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    private final ReplayServer server;
+    private final DataInputStream in;
+    private final CPTNTExt plugin;
+    private final RecordingCoreProtect coreProtect = new RecordingCoreProtect();
+    private final DamageSource damageSource = BukkitStubs.stub(DamageSource.class,
+            (proxy, method, args) -> BukkitStubs.fallback(proxy, method.getName(), method.getReturnType(), args));
+    private final List<String> strings = new ArrayList<>();
+    private int version;
+    // First crater block of every explosion the server attributed, and who to
+    private final Map<String, String> expected = new HashMap<>();
+    private long events;
+    private long unsupported;
+    private long failures;
+
+    // Only under ReplayClassLoader, which initialises the plugin as it is constructed
+    private TraceReplay(ReplayServer server, DataInputStream in) {
+        this.server = server;
+        this.in = in;
+        this.plugin = new CPTNTExt();
+        // Nothing on disk and nothing from CoreProtect's history, the trace is the whole world
+        plugin.getConfig().set("journal.enable", false);
+        plugin.getConfig().set("warm-start.enable", false);
+        plugin.getConfig().set("metrics.file-interval-seconds", 0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: TraceReplay <trace> [--speed N]");
+            System.exit(2);
+        }
+        double speed = 1;
+        for (int i = 1; i < args.length - 1; i++) {
+            if (args[i].equals("--speed")) speed = Double.parseDouble(args[i + 1]);
+        }
+        File dataFolder = Files.createTempDirectory("cptntext-replay").toFile();
+        try (ReplayClassLoader loader = new ReplayClassLoader(dataFolder)) {
+            Method replay = loader.loadClass(TraceReplay.class.getName()).getDeclaredMethod("replay", Path.class, double.class);
+            replay.setAccessible(true);
+            replay.invoke(null, Path.of(args[0]), speed);
+        } catch (InvocationTargetException ex) {
+            if (ex.getCause() instanceof Exception cause) throw cause;
+            throw ex;
+        }
+    }
+
+    // Entry point inside ReplayClassLoader
+    private static void replay(Path trace, double speed) throws IOException, ReflectiveOperationException {
+        ReplayServer server = new ReplayServer();
+        Bukkit.setServer(server.server);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(trace), 1 << 16))) {
+            new TraceReplay(server, in).run(speed);
+        }
+    }
+
+    private void run(double speed) throws IOException, ReflectiveOperationException {
+        if (in.readInt() != TraceRecorder.MAGIC) throw new IOException("Not a CPTNTExt trace");
+        version = in.readInt();
+        if (version < 1 || version > TraceRecorder.VERSION) throw new IOException("Unsupported trace version " + version);
+        if (!server.supportsItemStacks()) System.out.println("ItemStacks need a server here, item frame events are skipped");
+
+        // Past the CoreProtect lookup of onEnable, with the recording stub in its place
+        Method enable = CPTNTExt.class.getDeclaredMethod("enable", CoreProtectAPI.class);
+        enable.setAccessible(true);
+        enable.invoke(plugin, coreProtect);
+        long started = System.nanoTime();
+        try {
+            for (int type; (type = in.read()) >= 0; ) {
+                int millis = in.readInt();
+                if (speed > 0) {
+                    long wait = started + (long) (TimeUnit.MILLISECONDS.toNanos(millis) / speed) - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                }
+                server.advanceTo(millis / 50);
+                replay(type);
+            }
+        } catch (EOFException ex) {
+            System.out.println("Trace ends in the middle of a record, replayed up to there");
+        }
+        long elapsed = System.nanoTime() - started;
+        // Drains the pipeline, every removal has reached the recording CoreProtect once this returns
+        plugin.onDisable();
+        Field metrics = CPTNTExt.class.getDeclaredField("metrics");
+        metrics.setAccessible(true);
+        report(elapsed, (Metrics) metrics.get(plugin));
+    }
+
+    private void replay(int type) throws IOException {
+        switch (type) {
+            case TraceRecorder.INTERACT_BLOCK -> {
+                Player player = (Player) readEntity().proxy;
+                BlockRef block = readBlock();
+                block.set(material(readString()));
+                int facing = in.readByte(), part = in.readByte();
+                if (facing >= 0) block.world.shape(block.x, block.y, block.z, facing, part);
+                dispatch(new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK, null, block.block(), BlockFace.SELF));
+            }
+            case TraceRecorder.BLOCK_PLACE -> {
+                Player player = (Player) readEntity().proxy;
+                BlockRef block = readBlock();
+                block.set(material(readString()));
+                Block placed = block.block();
+                dispatch(new BlockPlaceEvent(placed, null, placed, null, player, true, EquipmentSlot.HAND));
+            }
+            case TraceRecorder.BLOCK_BREAK -> {
+                Player player = (Player) readEntity().proxy;
+                BlockRef block = readBlock();
+                block.set(material(readString()));
+                if (!dispatch(new BlockBreakEvent(block.block(), player))) block.set(Material.AIR);
+            }
+            case TraceRecorder.PROJECTILE_LAUNCH -> {
+                ReplayServer.ReplayEntity projectile = readEntity();
+                projectile.shooter = switch (in.readByte()) {
+                    case TraceRecorder.SHOOTER_ENTITY -> readEntity().proxy;
+                    case TraceRecorder.SHOOTER_BLOCK -> server.blockSource(readBlock().block());
+                    default -> null;
+                };
+                dispatch(new ProjectileLaunchEvent(projectile.proxy));
+            }
+            case TraceRecorder.TNT_SPAWN -> {
+                ReplayServer.ReplayEntity tnt = readEntity();
+                tnt.source = in.readBoolean() ? readEntity() : null;
+                dispatch(new EntitySpawnEvent(tnt.proxy));
+            }
+            case TraceRecorder.PROJECTILE_HIT -> {
+                ReplayServer.ReplayEntity projectile = readEntity();
+                ReplayServer.ReplayEntity hit = readEntity();
+                dispatch(new ProjectileHitEvent((Projectile) projectile.proxy, hit.proxy, null, null));
+            }
+            case TraceRecorder.ENTITY_REMOVE -> {
+                int id = in.readInt();
+                // Older traces lost the cause, an end crystal's EXPLODE removal comes before its explosion record
+                EntityRemoveEvent.Cause cause = version >= 3 ? EntityRemoveEvent.Cause.values()[in.readByte()] : EntityRemoveEvent.Cause.DESPAWN;
+                ReplayServer.ReplayEntity entity = server.entity(id);
+                if (entity == null) return;
+                dispatch(new EntityRemoveFromWorldEvent(entity.proxy, cause));
+                server.removeEntity(id);
+            }
+            case TraceRecorder.DAMAGE -> {
+                ReplayServer.ReplayEntity victim = readEntity();
+                victim.framed = readFramedItem();
+                ReplayServer.ReplayEntity damager = readEntity();
+                if (victim.framed != null && !server.supportsItemStacks()) {
+                    unsupported++;
+                    return;
+                }
+                dispatch(new EntityDamageByEntityEvent(damager.proxy, victim.proxy, EntityDamageEvent.DamageCause.ENTITY_ATTACK, damageSource, 1));
+            }
+            case TraceRecorder.INTERACT_ENTITY -> {
+                Player player = (Player) readEntity().proxy;
+                ReplayServer.ReplayEntity clicked = readEntity();
+                clicked.framed = readFramedItem();
+                if (clicked.framed != null && !server.supportsItemStacks()) {
+                    unsupported++;
+                    return;
+                }
+                dispatch(new PlayerInteractEntityEvent(player, clicked.proxy));
+            }
+            case TraceRecorder.BLOCK_EXPLODE -> {
+                Block origin = readBlock().block();
+                List<Block> blocks = readBlocks(true);
+                BlockExplodeEvent event = new BlockExplodeEvent(origin, null, blocks, 1f, ExplosionResult.DESTROY);
+                if (!dispatch(event)) clear(event.blockList());
+            }
+            case TraceRecorder.ENTITY_EXPLODE -> {
+                ReplayServer.ReplayEntity entity = readEntity();
+                entity.target = in.readBoolean() ? readEntity() : null;
+                Location location = readLocation();
+                List<Block> blocks = readBlocks(true);
+                EntityExplodeEvent event = new EntityExplodeEvent(entity.proxy, location, blocks, 1f, ExplosionResult.DESTROY);
+                if (!dispatch(event)) clear(event.blockList());
+            }
+            case TraceRecorder.BLOCK_IGNITE -> {
+                BlockRef block = readBlock();
+                BlockIgniteEvent.IgniteCause cause = BlockIgniteEvent.IgniteCause.values()[in.readByte()];
+                Entity entity = in.readBoolean() ? readEntity().proxy : null;
+                Block ignitingBlock = in.readBoolean() ? readBlock().block() : null;
+                if (!dispatch(new BlockIgniteEvent(block.block(), cause, entity, ignitingBlock))) block.set(Material.FIRE);
+            }
+            case TraceRecorder.BLOCK_BURN -> {
+                BlockRef block = readBlock();
+                block.set(material(readString()));
+                Block ignitingBlock = in.readBoolean() ? readBlock().block() : null;
+                if (!dispatch(new BlockBurnEvent(block.block(), ignitingBlock))) block.set(Material.AIR);
+            }
+            case TraceRecorder.HANGING_BREAK -> {
+                ReplayServer.ReplayEntity hanging = readEntity();
+                HangingBreakEvent.RemoveCause cause = HangingBreakEvent.RemoveCause.values()[in.readByte()];
+                dispatch(new HangingBreakEvent((Hanging) hanging.proxy, cause));
+            }
+            case TraceRecorder.PISTON -> {
+                Block piston = readBlock().block();
+                BlockFace direction = BlockFace.values()[in.readByte()];
+                boolean extend = in.readBoolean();
+                List<Block> blocks = readBlocks(false);
+                boolean cancelled = dispatch(extend ? new BlockPistonExtendEvent(piston, blocks, direction)
+                        : new BlockPistonRetractEvent(piston, blocks, direction));
+                if (!cancelled) move(blocks, direction);
+            }
+            case TraceRecorder.DISPENSE -> {
+                BlockRef dispenser = readBlock();
+                dispenser.set(material(readString()));
+                Material item = material(readString());
+                int facing = in.readByte();
+                if (facing >= 0) dispenser.world.shape(dispenser.x, dispenser.y, dispenser.z, facing, -1);
+                if (!server.supportsItemStacks()) {
+                    unsupported++;
+                    return;
+                }
+                BlockFace front = facing >= 0 ? BlockFace.values()[facing] : BlockFace.SELF;
+                // Where the server spawns dispensed TNT, the centre of the block in front
+                Vector spawn = new Vector(dispenser.x + front.getModX() + 0.5, dispenser.y + front.getModY(), dispenser.z + front.getModZ() + 0.5);
+                dispatch(new BlockDispenseEvent(dispenser.block(), new ItemStack(item), spawn));
+            }
+            case TraceRecorder.OUTCOME -> {
+                BlockRef block = readBlock();
+                expected.put(key(block.world.name, block.x, block.y, block.z), readString());
+            }
+            default -> throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    // Whether the event ended up cancelled, a handler throwing counts as a failure and the replay goes on
+    private boolean dispatch(Event event) {
+        events++;
+        try {
+            server.dispatch(event);
+        } catch (RuntimeException ex) {
+            if (++failures <= MAX_REPORTED_ERRORS) {
+                System.out.println("Handler failed on " + event.getEventName() + ": " + ex);
+            }
+        }
+        return event instanceof Cancellable cancellable && cancellable.isCancelled();
+    }
+
+    // All taken out before any is put back, the blocks of a row push into each other's places
+    private void move(List<Block> blocks, BlockFace direction) {
+        Material[] types = new Material[blocks.size()];
+        for (int i = 0; i < types.length; i++) types[i] = blocks.get(i).getType();
+        clear(blocks);
+        for (int i = 0; i < types.length; i++) {
+            Block block = blocks.get(i);
+            server.world(block.getWorld().getName())
+                    .set(block.getX() + direction.getModX(), block.getY() + direction.getModY(), block.getZ() + direction.getModZ(), types[i]);
+        }
+    }
+
+    private void clear(List<Block> blocks) {
+        for (Block block : blocks) server.world(block.getWorld().getName()).set(block.getX(), block.getY(), block.getZ(), Material.AIR);
+    }
+
+    private void report(long elapsedNanos, Metrics metrics) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf(Locale.ROOT, "Replayed %d events in %.1f s (%.0f events/s), %d unsupported, %d failed, %d alerts sent%n",
+                events, seconds, events / Math.max(seconds, 1e-9), unsupported, failures, server.messages());
+
+        System.out.printf(Locale.ROOT, "%n%-28s %10s %10s %10s %10s%n", "handler", "count", "p50 us", "p99 us", "max us");
+        for (Map.Entry<String, Metrics.Timer> entry : metrics.timers().entrySet()) {
+            Metrics.Timer timer = entry.getValue();
+            if (timer.count() == 0) continue;
+            System.out.printf(Locale.ROOT, "%-28s %10d %10.1f %10.1f %10.1f%n", entry.getKey(), timer.count(),
+                    timer.percentileNanos(0.5) / 1e3, timer.percentileNanos(0.99) / 1e3, timer.maxNanos() / 1e3);
+        }
+
+        int matched = 0, wrong = 0, missing = 0;
+        List<String> examples = new ArrayList<>();
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            String actual = coreProtect.users.get(entry.getKey());
+            if (actual == null) {
+                missing++;
+            } else if (actual.equals(entry.getValue())) {
+                matched++;
+            } else {
+                wrong++;
+                if (examples.size() < MAX_REPORTED_ERRORS) examples.add(entry.getKey() + ": " + entry.getValue() + " -> " + actual);
+            }
+        }
+        int extra = 0;
+        for (String key : coreProtect.users.keySet()) {
+            if (!expected.containsKey(key)) extra++;
+        }
+        System.out.printf(Locale.ROOT, "%nAttribution of %d explosions: %d matched, %d wrong user, %d missing, %d extra%n",
+                expected.size(), matched, wrong, missing, extra);
+        for (String example : examples) System.out.println("  " + example);
+    }
+
+    /* ---------- TRACE ---------- */
+
+    private String readString() throws IOException {
+        int id = in.readInt();
+        if (id >= 0) return strings.get(id);
+        String value = in.readUTF();
+        strings.add(value);
+        return value;
+    }
+
+    private ReplayServer.ReplayEntity readEntity() throws IOException {
+        int id = in.readInt();
+        String type = readString();
+        String name = readString();
+        String world = readString();
+        return server.entity(id, type, name, world, in.readDouble(), in.readDouble(), in.readDouble());
+    }
+
+    private Location readLocation() throws IOException {
+        return new Location(server.world(readString()).proxy, in.readDouble(), in.readDouble(), in.readDouble());
+    }
+
+    private BlockRef readBlock() throws IOException {
+        return new BlockRef(server.world(readString()), in.readInt(), in.readInt(), in.readInt());
+    }
+
+    // The world model takes the recorded materials, the first crater block is watched for the attribution score
+    private List<Block> readBlocks(boolean crater) throws IOException {
+        int count = in.readInt();
+        List<Block> blocks = new ArrayList<>(count);
+        if (count == 0) return blocks;
+        ReplayServer.ReplayWorld world = server.world(readString());
+        for (int i = 0; i < count; i++) {
+            BlockRef block = new BlockRef(world, in.readInt(), in.readInt(), in.readInt());
+            block.set(material(readString()));
+            blocks.add(block.block());
+            if (crater && i == 0) coreProtect.watched.add(key(world.name, block.x, block.y, block.z));
+        }
+        return blocks;
+    }
+
+    private Material readFramedItem() throws IOException {
+        return in.readBoolean() ? material(readString()) : null;
+    }
+
+    private static Material material(String name) {
+        Material material = Material.getMaterial(name);
+        return material != null ? material : Material.AIR;
+    }
+
+    private static String key(String world, int x, int y, int z) {
+        return world + " " + x + " " + y + " " + z;
+    }
+
+    private record BlockRef(ReplayServer.ReplayWorld world, int x, int y, int z) {
+
+        Block block() {
+            return world.block(x, y, z);
+        }
+
+        void set(Material type) {
+            world.set(x, y, z, type);
+        }
+    }
+
+    // Keeps the last user logged at each watched crater block, everything else is only counted by the pipeline
+    static final class RecordingCoreProtect extends CoreProtectAPI {
+        final Set<String> watched = ConcurrentHashMap.newKeySet();
+        final Map<String, String> users = new ConcurrentHashMap<>();
+
+        @Override
+        public boolean logRemoval(String user, Location location, Material type, BlockData blockData) {
+            String key = key(location.getWorld().getName(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+            if (watched.contains(key)) users.put(key, user);
+            return true;
+        }
+
+        @Override
+        public boolean logPlacement(String user, Location location, Material type, BlockData blockData) {
+            return true;
+        }
+
+        @Override
+        public boolean logInteraction(String user, Location location) {
+            return true;
+        }
+    }
+}
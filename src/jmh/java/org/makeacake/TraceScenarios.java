@@ -0,0 +1,86 @@
+package org.makeacake;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Entity;
+import org.bukkit.event.entity.EntityRemoveEvent;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Writes traces of known event sequences with TraceRecorder, each explosion carrying the OUTCOME the server logs
+ * for it, so TraceReplay scores a handler change against a case that has to keep matching. Entities and blocks
+ * come from a ReplayServer of their own, nothing is dispatched while writing.
+ *
+ * ./gradlew traceScenario -Pscenario=crystal -Ptrace=build/crystal.bin, then replay the file
+ */
+public final class TraceScenarios {
+
+    private final ReplayServer server = new ReplayServer();
+    private final TraceRecorder recorder;
+    private int nextEntityId = 1;
+
+    private TraceScenarios(TraceRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: TraceScenarios <crystal> <trace>");
+            System.exit(2);
+        }
+        TraceRecorder recorder = TraceRecorder.open(Path.of(args[1]).toAbsolutePath(), Long.MAX_VALUE, Logger.getLogger("Scenario"));
+        try {
+            TraceScenarios scenarios = new TraceScenarios(recorder);
+            switch (args[0]) {
+                case "crystal" -> scenarios.crystal();
+                default -> throw new IllegalArgumentException("Unknown scenario " + args[0]);
+            }
+        } finally {
+            recorder.close();
+        }
+        System.out.println("Wrote " + recorder.records() + " records to " + recorder.file());
+    }
+
+    /* ---------- SCENARIOS ---------- */
+
+    // A player sets off a crystal whose blast sets off a second one. The server removes an end crystal before it
+    // explodes, both crystals have to keep the player's attribution past their removal.
+    private void crystal() {
+        Entity player = entity("PLAYER", "Steve", 0, 64, 0);
+        Entity first = entity("END_CRYSTAL", "End Crystal", 4, 64, 0);
+        Entity second = entity("END_CRYSTAL", "End Crystal", 8, 64, 0);
+
+        recorder.damage(first, player);
+        recorder.entityRemove(first, EntityRemoveEvent.Cause.EXPLODE.ordinal());
+        // Entities are hurt before the blocks of the same explosion are destroyed
+        recorder.damage(second, first);
+        explode(first, 4, "#end_crystal-Steve");
+        recorder.entityRemove(second, EntityRemoveEvent.Cause.EXPLODE.ordinal());
+        explode(second, 8, "#end_crystal-Steve");
+    }
+
+    /* ---------- HELPERS ---------- */
+
+    private Entity entity(String type, String name, double x, double y, double z) {
+        return server.entity(nextEntityId++, type, name, "world", x, y, z).proxy;
+    }
+
+    // A small crater under the entity, logged under user
+    private void explode(Entity entity, int x, String user) {
+        ReplayServer.ReplayWorld world = server.world("world");
+        List<Block> blocks = new ArrayList<>();
+        for (int dx = -1; dx <= 1; dx++) {
+            world.set(x + dx, 63, 0, Material.STONE);
+            blocks.add(world.block(x + dx, 63, 0));
+        }
+        Location location = entity.getLocation();
+        recorder.entityExplode(entity, location, blocks);
+        recorder.outcome(blocks.get(0), user);
+    }
+}
@@ -0,0 +1,180 @@
+package org.makeacake;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects alerts from every handler and sends them once per tick. Alerts of the same type from the same chunk
+ * are merged into one message with a repeat count and then held back for the dedup window. Recipients are looked
+ * up once per tick for the whole batch: players in a world with alerts pick the alerts within range by squared
+ * distance, instead of an entity scan per alert, and every player gets at most a few alerts per window.
+ *
+ * Handlers on any region thread may submit; {@link #flush} runs on the global region thread only. On Paper that
+ * is the main thread, which checks the players inline. On Folia a player's position belongs to the region owning
+ * it, so only the players in an alerted world get a task on their own scheduler, which checks the distance there.
+ */
+public class AlertDispatcher {
+
+    private static final long PLAYER_WINDOW_MILLIS = 10_000;
+
+    private final Plugin plugin;
+    private final Map<AlertKey, Pending> pending = new ConcurrentHashMap<>();
+    // Owned by the flushing thread
+    private final Map<AlertKey, Long> lastSent = new HashMap<>();
+    // Each budget is used by its player's thread and expired by the flushing one
+    private final Map<UUID, PlayerBudget> budgets = new ConcurrentHashMap<>();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder merged = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+
+    public AlertDispatcher(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    // Message is pre-rendered, see Settings, and doubles as the alert type
+    public void submit(Location location, Component message) {
+        if (message == null) return;
+        submitted.increment();
+        AlertKey key = new AlertKey(location.getWorld().getUID(), LocationStore.chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4), message);
+        pending.compute(key, (k, alert) -> {
+            if (alert == null) return new Pending(location.getX(), location.getY(), location.getZ());
+            alert.count++;
+            merged.increment();
+            return alert;
+        });
+    }
+
+    public void flush(Settings.Alerts settings, Collection<? extends Player> online) {
+        if (pending.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        List<Delivery> deliveries = new ArrayList<>();
+        for (AlertKey key : pending.keySet()) {
+            Pending alert = pending.remove(key);
+            if (alert == null) continue;
+            Long previous = lastSent.get(key);
+            if (previous != null && now - previous < settings.dedupMillis()) {
+                merged.add(alert.count);
+                continue;
+            }
+            lastSent.put(key, now);
+            Component message = alert.count > 1
+                    ? key.message.append(Component.text(" (x" + alert.count + ")", NamedTextColor.GRAY))
+                    : key.message;
+            deliveries.add(new Delivery(key.world, alert.x, alert.y, alert.z, message));
+        }
+        expire(now, settings.dedupMillis());
+        if (deliveries.isEmpty()) return;
+        List<Delivery> batch = List.copyOf(deliveries);
+        Set<UUID> worlds = new HashSet<>();
+        for (Delivery delivery : batch) worlds.add(delivery.world);
+        boolean inline = !Util.isFolia();
+        for (Player player : online) {
+            // Racy on Folia, a player changing worlds meanwhile is filtered again by deliver
+            if (!worlds.contains(player.getWorld().getUID())) continue;
+            if (inline) {
+                deliver(player, batch, settings, now);
+            } else {
+                player.getScheduler().run(plugin, task -> deliver(player, batch, settings, now), null);
+            }
+        }
+    }
+
+    public long submitted() {
+        return submitted.sum();
+    }
+
+    public long merged() {
+        return merged.sum();
+    }
+
+    public long sent() {
+        return sent.sum();
+    }
+
+    public long rateLimited() {
+        return rateLimited.sum();
+    }
+
+    private PlayerBudget budget(UUID player, long now) {
+        PlayerBudget budget = budgets.computeIfAbsent(player, uuid -> new PlayerBudget());
+        budget.roll(now);
+        return budget;
+    }
+
+    private void expire(long now, long dedupMillis) {
+        lastSent.values().removeIf(time -> now - time >= dedupMillis);
+        budgets.values().removeIf(budget -> budget.expired(now));
+    }
+
+    private void deliver(Player player, List<Delivery> batch, Settings.Alerts settings, long now) {
+        Location at = player.getLocation();
+        UUID world = at.getWorld().getUID();
+        double radiusSquared = settings.radius() * settings.radius();
+        for (Delivery delivery : batch) {
+            if (!delivery.world.equals(world)) continue;
+            double dx = at.getX() - delivery.x, dy = at.getY() - delivery.y, dz = at.getZ() - delivery.z;
+            if (dx * dx + dy * dy + dz * dz > radiusSquared) continue;
+            if (!budget(player.getUniqueId(), now).take(settings.playerLimit())) {
+                rateLimited.increment();
+                continue;
+            }
+            player.sendMessage(delivery.message);
+            sent.increment();
+        }
+    }
+
+    private record AlertKey(UUID world, long chunk, Component message) {
+    }
+
+    private record Delivery(UUID world, double x, double y, double z, Component message) {
+    }
+
+    // First position of the alert in its chunk, count of merged submissions
+    private static final class Pending {
+        final double x, y, z;
+        int count = 1;
+
+        Pending(double x, double y, double z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+
+    private static final class PlayerBudget {
+        long windowStart;
+        int used;
+
+        synchronized void roll(long now) {
+            if (now - windowStart < PLAYER_WINDOW_MILLIS) return;
+            windowStart = now;
+            used = 0;
+        }
+
+        synchronized boolean take(int limit) {
+            if (limit > 0 && used >= limit) return false;
+            used++;
+            return true;
+        }
+
+        synchronized boolean expired(long now) {
+            return now - windowStart >= PLAYER_WINDOW_MILLIS;
+        }
+    }
+}
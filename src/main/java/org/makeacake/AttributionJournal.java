@@ -0,0 +1,545 @@
+package org.makeacake;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only, memory-mapped journal of block attribution writes so they survive restarts.
+ * Appending threads (the main thread, or every region thread on Folia) each write fixed-width records to their
+ * own staging buffer; a single journal thread copies them into the mapped file and periodically compacts it
+ * into a new generation holding the latest live entries.
+ *
+ * Records: WORLD (index -> uid), REASON (id -> encoded reason), BLOCK (world, packed pos, reason id, access
+ * time) and REMOVE (world, packed pos, time), written when an attribution is taken out of a block, e.g. by a
+ * piston. Replay hands records to the store per chunk instead of onto the heap, see
+ * {@link LocationStore#replay(UUID, int, int, int, int, long)}, so chunks that stay unloaded cost no heap. Reason ids are those of the running {@link ReasonDictionary} and are only meaningful from their REASON
+ * record onwards, replay resolves them in file order. Every staging buffer announces the worlds and reasons it
+ * uses itself, so its records stay self-contained whatever order the buffers are drained in, and announces its
+ * reasons again once the dictionary has reused ids. Compaction writes names it cannot keep under their
+ * current id with negative ids, which the dictionary never hands out.
+ */
+public class AttributionJournal {
+
+    private static final int MAGIC = 0x43505458;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final long SEGMENT_SIZE = 16L << 20;
+    private static final long MIN_COMPACT_SIZE = 1L << 20;
+    private static final String PREFIX = "attributions-";
+    private static final String SUFFIX = ".journal";
+
+    private static final byte END = 0;
+    private static final byte WORLD = 1;
+    private static final byte REASON = 2;
+    private static final byte BLOCK = 3;
+    private static final byte REMOVE = 4;
+    private static final int BLOCK_RECORD_SIZE = 1 + 2 + 8 + 4 + 8;
+    private static final int REMOVE_RECORD_SIZE = 1 + 2 + 8 + 8;
+
+    private final Path folder;
+    private final ReasonDictionary reasons;
+    private final long expireAfterAccessMillis;
+    private final Logger logger;
+
+    // Producer side, any thread. Each thread locks only its own staging buffer, shared with the journal thread.
+    private final Map<UUID, Integer> worldIndexes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextWorldIndex = new AtomicInteger();
+    private final List<Staging> stagings = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Staging> staging = ThreadLocal.withInitial(() -> {
+        Staging created = new Staging();
+        stagings.add(created);
+        return created;
+    });
+
+    // Journal thread only.
+    private ScheduledExecutorService executor;
+    private long generation;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private volatile long position = HEADER_SIZE;
+    private volatile long lastCompactionMillis;
+
+    public AttributionJournal(Path folder, ReasonDictionary reasons, long expireAfterAccessMillis, Logger logger) {
+        this.folder = folder;
+        this.reasons = reasons;
+        this.expireAfterAccessMillis = expireAfterAccessMillis;
+        this.logger = logger;
+    }
+
+    /**
+     * Hands the newest journal generation to the store, chunk by chunk, and returns the number of replayed records.
+     * Must run before {@link #start(long)}.
+     */
+    public int replay(LocationStore store) throws IOException {
+        Files.createDirectories(folder);
+        generation = latestGeneration();
+        Path file = file(generation);
+        if (!Files.exists(file)) return 0;
+
+        int replayed = 0;
+        Map<Integer, Integer> ids = new HashMap<>();
+        UUID[] worlds = new UUID[16];
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("Journal " + file + " is too large to replay");
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                throw new IOException("Journal " + file + " has an unknown format");
+            }
+            try {
+                while (buf.hasRemaining()) {
+                    int start = buf.position();
+                    byte type = buf.get();
+                    if (type == END) {
+                        buf.position(start);
+                        break;
+                    }
+                    if (type == WORLD) {
+                        int index = buf.getShort() & 0xFFFF;
+                        UUID uid = new UUID(buf.getLong(), buf.getLong());
+                        if (index >= worlds.length) worlds = Arrays.copyOf(worlds, Math.max(index + 1, worlds.length << 1));
+                        worlds[index] = uid;
+                        worldIndexes.put(uid, index);
+                        nextWorldIndex.set(Math.max(nextWorldIndex.get(), index + 1));
+                    } else if (type == REASON) {
+                        int id = buf.getInt();
+                        byte[] name = new byte[buf.getInt()];
+                        buf.get(name);
+                        ids.put(id, reasons.decode(new String(name, StandardCharsets.UTF_8)));
+                    } else if (type == BLOCK) {
+                        int world = buf.getShort() & 0xFFFF;
+                        long packed = buf.getLong();
+                        Integer reason = ids.get(buf.getInt());
+                        long accessed = buf.getLong();
+                        if (reason == null || world >= worlds.length || worlds[world] == null) continue;
+                        store.replay(worlds[world], LocationStore.unpackX(packed), LocationStore.unpackY(packed), LocationStore.unpackZ(packed), reason, accessed);
+                        replayed++;
+                    } else if (type == REMOVE) {
+                        int world = buf.getShort() & 0xFFFF;
+                        long packed = buf.getLong();
+                        long time = buf.getLong();
+                        if (world >= worlds.length || worlds[world] == null) continue;
+                        store.replay(worlds[world], LocationStore.unpackX(packed), LocationStore.unpackY(packed), LocationStore.unpackZ(packed), ReasonDictionary.NONE, time);
+                        replayed++;
+                    } else {
+                        logger.warning("Journal " + file + " is corrupt at offset " + start + ", ignoring the rest");
+                        buf.position(start);
+                        break;
+                    }
+                }
+            } catch (BufferUnderflowException ex) {
+                // Torn record at the tail, everything before it is intact
+            }
+            position = buf.position();
+        }
+        return replayed;
+    }
+
+    public void start(long compactIntervalMinutes) throws IOException {
+        Files.createDirectories(folder);
+        openForAppend(file(generation), position);
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "CPTNTExt-Journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::drainSafely, 100, 100, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::compactSafely, compactIntervalMinutes, compactIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    public void append(UUID world, int x, int y, int z, int reason) {
+        if (reason <= ReasonDictionary.NONE) return;
+        int worldIndex = worldIndex(world);
+        Staging stage = staging.get();
+        synchronized (stage) {
+            stage.follow(reasons.generation());
+            announceWorld(stage, worldIndex, world);
+            if (!stage.reasonAnnounced(reason)) {
+                byte[] name = reasons.encode(reason).getBytes(StandardCharsets.UTF_8);
+                stage.ensure(1 + 4 + 4 + name.length);
+                stage.pending.put(REASON).putInt(reason).putInt(name.length).put(name);
+            }
+            stage.ensure(BLOCK_RECORD_SIZE);
+            stage.pending.put(BLOCK).putShort((short) worldIndex).putLong(LocationStore.pack(x, y, z))
+                    .putInt(reason).putLong(System.currentTimeMillis());
+        }
+    }
+
+    // The block's attribution was taken out, replay drops what earlier records and the chunk's page hold for it
+    public void remove(UUID world, int x, int y, int z) {
+        int worldIndex = worldIndex(world);
+        Staging stage = staging.get();
+        synchronized (stage) {
+            announceWorld(stage, worldIndex, world);
+            stage.ensure(REMOVE_RECORD_SIZE);
+            stage.pending.put(REMOVE).putShort((short) worldIndex).putLong(LocationStore.pack(x, y, z))
+                    .putLong(System.currentTimeMillis());
+        }
+    }
+
+    public long size() {
+        return position;
+    }
+
+    public long lastCompactionMillis() {
+        return lastCompactionMillis;
+    }
+
+    public void close() {
+        if (executor == null) return;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) executor.shutdownNow();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        // The journal thread is gone, finish the tail on the caller.
+        drainSafely();
+        try {
+            if (mapped != null) mapped.force();
+            if (channel != null) channel.close();
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to close attribution journal", ex);
+        }
+    }
+
+    private int worldIndex(UUID world) {
+        Integer worldIndex = worldIndexes.get(world);
+        if (worldIndex == null) worldIndex = worldIndexes.computeIfAbsent(world, uid -> nextWorldIndex.getAndIncrement());
+        return worldIndex;
+    }
+
+    // Caller holds the staging buffer's monitor
+    private static void announceWorld(Staging stage, int worldIndex, UUID world) {
+        if (stage.worldAnnounced(worldIndex)) return;
+        stage.ensure(1 + 2 + 16);
+        stage.pending.put(WORLD).putShort((short) worldIndex)
+                .putLong(world.getMostSignificantBits()).putLong(world.getLeastSignificantBits());
+    }
+
+    /* ---------- JOURNAL THREAD ---------- */
+
+    private void drainSafely() {
+        try {
+            drain();
+        } catch (Throwable t) {
+            logger.log(Level.WARNING, "Failed to write attribution journal", t);
+        }
+    }
+
+    private void drain() throws IOException {
+        for (Staging stage : stagings) {
+            ByteBuffer batch;
+            synchronized (stage) {
+                if (stage.pending.position() == 0) continue;
+                batch = stage.pending;
+                stage.pending = stage.spare;
+                stage.spare = batch;
+            }
+            write(batch);
+        }
+    }
+
+    private void write(ByteBuffer batch) throws IOException {
+        batch.flip();
+        while (batch.hasRemaining()) {
+            if (!mapped.hasRemaining()) remap();
+            int length = Math.min(batch.remaining(), mapped.remaining());
+            int limit = batch.limit();
+            batch.limit(batch.position() + length);
+            mapped.put(batch);
+            batch.limit(limit);
+            position += length;
+        }
+        batch.clear();
+    }
+
+    private void compactSafely() {
+        try {
+            drain();
+            if (position < MIN_COMPACT_SIZE) return;
+            compact();
+        } catch (Throwable t) {
+            logger.log(Level.WARNING, "Failed to compact attribution journal", t);
+        }
+    }
+
+    // Rewrites the newest record of every live position into the next generation and switches appends over to it.
+    private void compact() throws IOException {
+        long started = System.nanoTime();
+        long deadline = System.currentTimeMillis() - expireAfterAccessMillis;
+        Path current = file(generation);
+        Path next = file(generation + 1);
+        mapped.force();
+
+        Map<Integer, String> definitions = new HashMap<>();
+        Map<Integer, UUID> worlds = new HashMap<>();
+        Map<String, Integer> nameIndexes = new HashMap<>();
+        String[] names = new String[64];
+        int blocks = 0;
+        int[] offsets = new int[1024];
+        int[] blockNames = new int[1024];
+
+        ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, position);
+        buf.position(HEADER_SIZE);
+        while (buf.hasRemaining()) {
+            int start = buf.position();
+            byte type = buf.get();
+            if (type == WORLD) {
+                worlds.put(buf.getShort() & 0xFFFF, new UUID(buf.getLong(), buf.getLong()));
+            } else if (type == REASON) {
+                int id = buf.getInt();
+                byte[] name = new byte[buf.getInt()];
+                buf.get(name);
+                definitions.put(id, new String(name, StandardCharsets.UTF_8));
+            } else if (type == BLOCK) {
+                buf.position(start + 1 + 2 + 8);
+                String name = definitions.get(buf.getInt());
+                buf.position(start + BLOCK_RECORD_SIZE);
+                if (name == null) continue;
+                Integer index = nameIndexes.get(name);
+                if (index == null) {
+                    index = nameIndexes.size();
+                    nameIndexes.put(name, index);
+                    if (index >= names.length) names = Arrays.copyOf(names, names.length << 1);
+                    names[index] = name;
+                }
+                if (blocks == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, blocks << 1);
+                    blockNames = Arrays.copyOf(blockNames, blocks << 1);
+                }
+                offsets[blocks] = start;
+                blockNames[blocks] = index;
+                blocks++;
+            } else if (type == REMOVE) {
+                buf.position(start + REMOVE_RECORD_SIZE);
+                if (blocks == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, blocks << 1);
+                    blockNames = Arrays.copyOf(blockNames, blocks << 1);
+                }
+                offsets[blocks] = start;
+                blockNames[blocks] = -1;
+                blocks++;
+            } else {
+                break;
+            }
+        }
+
+        // Keep current ids for names that still own one, so the producer's view of what is journaled stays valid.
+        Map<String, Integer> finalIds = new HashMap<>();
+        for (Map.Entry<Integer, String> definition : definitions.entrySet()) {
+            finalIds.put(definition.getValue(), definition.getKey());
+        }
+        int[] targetIds = new int[nameIndexes.size()];
+        int negative = 0;
+        for (int i = 0; i < targetIds.length; i++) {
+            Integer id = finalIds.get(names[i]);
+            targetIds[i] = id != null ? id : --negative;
+        }
+
+        Map<Integer, LongSet> seen = new HashMap<>();
+        int kept = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(next), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Map.Entry<Integer, UUID> world : worlds.entrySet()) {
+                out.writeByte(WORLD);
+                out.writeShort(world.getKey());
+                out.writeLong(world.getValue().getMostSignificantBits());
+                out.writeLong(world.getValue().getLeastSignificantBits());
+            }
+            for (Map.Entry<Integer, String> definition : definitions.entrySet()) {
+                writeReason(out, definition.getKey(), definition.getValue());
+            }
+            for (int i = 0; i < targetIds.length; i++) {
+                if (targetIds[i] < 0) writeReason(out, targetIds[i], names[i]);
+            }
+            // Newest first, the first record seen for a position wins. Live removals stay, they still mask what
+            // a chunk paged out before them holds.
+            for (int i = blocks - 1; i >= 0; i--) {
+                buf.position(offsets[i] + 1);
+                int world = buf.getShort() & 0xFFFF;
+                long packed = buf.getLong();
+                if (blockNames[i] < 0) {
+                    long time = buf.getLong();
+                    if (!seen.computeIfAbsent(world, w -> new LongSet()).add(packed) || time < deadline) continue;
+                    out.writeByte(REMOVE);
+                    out.writeShort(world);
+                    out.writeLong(packed);
+                    out.writeLong(time);
+                    kept++;
+                    continue;
+                }
+                buf.getInt();
+                long accessed = buf.getLong();
+                if (accessed < deadline) continue;
+                if (!seen.computeIfAbsent(world, w -> new LongSet()).add(packed)) continue;
+                out.writeByte(BLOCK);
+                out.writeShort(world);
+                out.writeLong(packed);
+                out.writeInt(targetIds[blockNames[i]]);
+                out.writeLong(accessed);
+                kept++;
+            }
+        }
+
+        // Anything appended meanwhile is still in the staging buffers, the journal thread is the only writer.
+        channel.close();
+        generation++;
+        openForAppend(next, Files.size(next));
+        try {
+            Files.deleteIfExists(current);
+        } catch (IOException ex) {
+            // Still mapped on some platforms, removed on the next start instead
+        }
+        lastCompactionMillis = System.currentTimeMillis();
+        logger.info("Compacted attribution journal: " + blocks + " -> " + kept + " records in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+    }
+
+    private static void writeReason(DataOutputStream out, int id, String name) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(REASON);
+        out.writeInt(id);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void openForAppend(Path file, long end) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            channel.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip(), 0);
+            end = HEADER_SIZE;
+        }
+        position = end;
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_SIZE);
+    }
+
+    private void remap() throws IOException {
+        mapped.force();
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_SIZE);
+    }
+
+    private Path file(long generation) {
+        return folder.resolve(PREFIX + generation + SUFFIX);
+    }
+
+    // Newest generation wins, leftovers of an interrupted compaction or a platform that kept them mapped are removed.
+    private long latestGeneration() throws IOException {
+        long latest = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) latest = Math.max(latest, generationOf(file));
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                if (generationOf(file) < latest) Files.deleteIfExists(file);
+            }
+        }
+        return latest;
+    }
+
+    private static long generationOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    // Records of one appending thread waiting for the journal thread, plus what that stream has announced so far.
+    private static final class Staging {
+        ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+        ByteBuffer spare = ByteBuffer.allocate(1 << 16);
+        private boolean[] worlds = new boolean[16];
+        private boolean[] reasons = new boolean[256];
+        private int generation;
+
+        void ensure(int bytes) {
+            if (pending.remaining() >= bytes) return;
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() << 1, pending.position() + bytes));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+
+        // Reason ids announced under an older dictionary generation may name something else now
+        void follow(int generation) {
+            if (this.generation == generation) return;
+            this.generation = generation;
+            Arrays.fill(reasons, false);
+        }
+
+        // Returns whether the world was announced before, marking it announced either way.
+        boolean worldAnnounced(int index) {
+            if (index >= worlds.length) worlds = Arrays.copyOf(worlds, Math.max(index + 1, worlds.length << 1));
+            if (worlds[index]) return true;
+            worlds[index] = true;
+            return false;
+        }
+
+        boolean reasonAnnounced(int reason) {
+            if (reason >= reasons.length) reasons = Arrays.copyOf(reasons, Math.max(reason + 1, reasons.length << 1));
+            if (reasons[reason]) return true;
+            reasons[reason] = true;
+            return false;
+        }
+    }
+
+    // Open-addressing set of packed positions, only used while compacting.
+    private static final class LongSet {
+        private long[] keys = new long[256];
+        private boolean[] used = new boolean[256];
+        private int size;
+
+        boolean add(long key) {
+            int mask = keys.length - 1;
+            int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+            while (used[slot]) {
+                if (keys[slot] == key) return false;
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            used[slot] = true;
+            if (++size > keys.length * 3 / 4) grow();
+            return true;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length << 1];
+            used = new boolean[oldKeys.length << 1];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (!oldUsed[i]) continue;
+                int slot = Long.hashCode(oldKeys[i] * 0x9E3779B97F4A7C15L) & mask;
+                while (used[slot]) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                used[slot] = true;
+            }
+        }
+    }
+}
@@ -1,68 +1,128 @@
 package org.makeacake;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
 import net.coreprotect.CoreProtect;
 import net.coreprotect.CoreProtectAPI;
+import net.kyori.adventure.text.Component;
 import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
 import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Directional;
 import org.bukkit.block.data.type.Bed;
 import org.bukkit.block.data.type.RespawnAnchor;
-import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
 import org.bukkit.entity.*;
 import org.bukkit.entity.minecart.ExplosiveMinecart;
-import org.bukkit.event.EventHandler;
+import org.bukkit.event.Event;
 import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.*;
 import org.bukkit.event.entity.*;
 import org.bukkit.event.hanging.HangingBreakEvent;
 import org.bukkit.event.player.PlayerInteractEntityEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.projectiles.BlockProjectileSource;
 import org.bukkit.projectiles.ProjectileSource;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
 
-public class CPTNTExt extends JavaPlugin implements Listener {
+public class CPTNTExt extends JavaPlugin {
 
-    private static record BlockPos(UUID world, int x, int y, int z) {
-        static BlockPos of(Location loc) {
-            return new BlockPos(loc.getWorld().getUID(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
-        }
-        static BlockPos of(Block b) {
-            return new BlockPos(b.getWorld().getUID(), b.getX(), b.getY(), b.getZ());
-        }
-    }
+    // Keeps /cptntext inspect within a few hundred chunk lookups, on the region owning the player
+    private static final int MAX_INSPECT_RADIUS = 128;
+    private static final int INSPECT_LINES = 10;
+
+    // Composition prefixes built once instead of concatenated per event
+    private static final Map<EntityType, String> TYPE_PREFIXES = prefixes(EntityType.class, type -> "#" + type.name().toLowerCase(Locale.ROOT) + "-");
+    private static final Map<HangingBreakEvent.RemoveCause, String> CAUSE_PREFIXES = prefixes(HangingBreakEvent.RemoveCause.class, cause -> "#" + cause.name() + "-");
+
+    private final ReasonDictionary reasons = new ReasonDictionary(1, TimeUnit.HOURS);
+    // "#<name>-" and, for what players shoot, "<name>-" of entities going by their type's name, see namePrefix
+    private final Map<EntityType, String> namePrefixes = new ConcurrentHashMap<>();
+    private final Map<EntityType, String> playerNamePrefixes = new ConcurrentHashMap<>();
+
+    // Hot tiers, backed by the off-heap cold tier when one is configured
+    private LocationStore locationCache;
+
+    private EntityStore entityCache;
 
-    private final Cache<BlockPos, String> locationCache = CacheBuilder.newBuilder()
-            .expireAfterAccess(1, TimeUnit.HOURS)
-            .concurrencyLevel(4)
-            .maximumSize(200_000)
-            .recordStats()
-            .build();
+    private ColdStore coldStore;
 
-    private final Cache<Entity, String> entityCache = CacheBuilder.newBuilder()
-            .expireAfterAccess(1, TimeUnit.HOURS)
-            .concurrencyLevel(4)
-            .maximumSize(50_000)
-            .recordStats()
-            .build();
+    private final RegionIndex regions = new RegionIndex(20_000, 1, TimeUnit.HOURS);
+
+    private final ExplosionAdmission admission = new ExplosionAdmission();
+
+    private final AlertDispatcher alerts = new AlertDispatcher(this);
+
+    private final ExplosionChains chains = new ExplosionChains();
+
+    private final DispenseStamps dispenses = new DispenseStamps();
+
+    private final NamespacedKey reasonKey = new NamespacedKey(this, "reason");
+    private final NamespacedKey blocksKey = new NamespacedKey(this, "blocks");
 
     private CoreProtectAPI api;
+    private AttributionJournal journal;
+    private WarmStart warmStart;
+    private LogPipeline logPipeline;
+    private LogCoalescer coalescer;
+    private volatile Settings settings;
+
+    private final Metrics metrics = new Metrics();
+    private final LongAdder coreProtectCalls = metrics.counter("coreprotect_direct_calls");
+    private final LongAdder cancelledBlockExplosions = metrics.counter("cancelled_block_explosions");
+    private final LongAdder cancelledEntityExplosions = metrics.counter("cancelled_entity_explosions");
+    private final LongAdder cancelledFires = metrics.counter("cancelled_fires");
+    private final LongAdder cancelledPaintingHits = metrics.counter("cancelled_painting_hits");
+    private final LongAdder pistonMoves = metrics.counter("piston_attributions_moved");
+
+    // Owner of every handler, all of them are registered by hand so each one gets a latency timer
+    private final Listener routedListener = new Listener() {};
+    private final Listener traceListener = new Listener() {};
+    private volatile List<EntityEventDispatcher<?>> dispatchers = List.of();
+    private volatile TraceRecorder trace;
 
     @Override
     public void onEnable() {
         getLogger().info("CPTNTExt enabling...");
-        Bukkit.getPluginManager().registerEvents(this, this);
         saveDefaultConfig();
         Plugin depend = Bukkit.getPluginManager().getPlugin("CoreProtect");
         if (depend == null) {
@@ -70,49 +130,718 @@ public class CPTNTExt extends JavaPlugin implements Listener {
             getPluginLoader().disablePlugin(this);
             return;
         }
-        api = ((CoreProtect) depend).getAPI();
-        getLogger().info("CPTNTExt enabled, CoreProtect API loaded: " + (api != null));
+        enable(((CoreProtect) depend).getAPI());
+    }
+
+    // Everything past the dependency lookup
+    private void enable(CoreProtectAPI api) {
+        this.api = api;
+        long coldBytes = Math.max(0, getConfig().getLong("cache.cold-tier-mb", 64)) << 20;
+        coldStore = coldBytes > 0 ? new ColdStore(coldBytes, 1, TimeUnit.HOURS) : null;
+        locationCache = new LocationStore(200_000, 1, TimeUnit.HOURS, coldStore);
+        entityCache = new EntityStore(50_000, 1, TimeUnit.HOURS, coldStore);
+        logPipeline = new LogPipeline(this, api,
+                Math.max(1, getConfig().getInt("logging.queue-capacity", 4096)),
+                Math.max(1, getConfig().getInt("logging.chunk-size", 500)),
+                getLogger());
+        coalescer = new LogCoalescer(this, api, TimeUnit.SECONDS.toMillis(Math.max(0, getConfig().getLong("logging.coalesce-seconds", 5))));
+        settings = Settings.compile(getConfig());
+        if (getConfig().getBoolean("journal.enable", true)) startJournal();
+        registerRoutedHandlers();
+        if (getConfig().getBoolean("warm-start.enable", false)) {
+            warmStart = new WarmStart(this, api, locationCache, reasons, metrics);
+            warmStart.start(Math.max(1, getConfig().getInt("warm-start.minutes", 60)),
+                    Math.max(1, getConfig().getInt("warm-start.radius", 128)),
+                    Math.max(1, getConfig().getInt("warm-start.threads", 2)));
+        }
+        registerGauges();
+        Bukkit.getGlobalRegionScheduler().runAtFixedRate(this, task -> cleanUp(), 1200L, 1200L);
+        Bukkit.getGlobalRegionScheduler().runAtFixedRate(this, task -> flushSummaries(false), 20L, 20L);
+        Bukkit.getGlobalRegionScheduler().runAtFixedRate(this, task -> coalescer.flush(false), 20L, 20L);
+        Bukkit.getGlobalRegionScheduler().runAtFixedRate(this, task -> alerts.flush(settings.alerts(), Bukkit.getOnlinePlayers()), 1L, 1L);
+        long metricsInterval = getConfig().getLong("metrics.file-interval-seconds", 60);
+        if (metricsInterval > 0) {
+            Bukkit.getAsyncScheduler().runAtFixedRate(this, task -> writeMetricsFile(), metricsInterval, metricsInterval, TimeUnit.SECONDS);
+        }
+        // Folia does not let us walk chunks from here, those page in when they next load and keep their data until then
+        if (!Util.isFolia()) {
+            for (World world : Bukkit.getWorlds()) {
+                for (Chunk chunk : world.getLoadedChunks()) pageIn(chunk);
+            }
+        }
+        getLogger().info("CPTNTExt enabled, CoreProtect API loaded: " + (api != null) + (Util.isFolia() ? ", running region-threaded" : ""));
+    }
+
+    @Override
+    public void onDisable() {
+        // Enabling may have stopped part way, close whatever was started
+        stopTrace();
+        // Chunks and entities are saved after plugins are disabled, hand them the attributions they still hold.
+        // Region threads are already stopped on Folia and their chunks cannot be touched, the journal covers those.
+        if (locationCache != null && settings != null && !Util.isFolia()) {
+            for (World world : Bukkit.getWorlds()) {
+                for (Chunk chunk : world.getLoadedChunks()) pageOut(chunk);
+                if (!settings.persistEntities()) continue;
+                for (Entity entity : world.getEntities()) {
+                    int reason = entityCache.get(entity.getEntityId());
+                    if (reason != ReasonDictionary.NONE && entity.isPersistent()) {
+                        entity.getPersistentDataContainer().set(reasonKey, PersistentDataType.STRING, reasons.encode(reason));
+                    }
+                }
+            }
+        }
+        if (warmStart != null) warmStart.shutdown();
+        if (journal != null) journal.close();
+        if (logPipeline != null) flushSummaries(true);
+        if (coalescer != null) coalescer.flush(true);
+        if (logPipeline != null) logPipeline.shutdown();
+    }
+
+    private void startJournal() {
+        journal = new AttributionJournal(getDataFolder().toPath().resolve("journal"), reasons, TimeUnit.HOURS.toMillis(1), getLogger());
+        try {
+            long started = System.nanoTime();
+            int replayed = journal.replay(locationCache);
+            getLogger().info("Replayed " + replayed + " attributions from the journal for " + locationCache.replayedChunks()
+                    + " chunks in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+            journal.start(Math.max(1, getConfig().getLong("journal.compact-interval-minutes", 10)));
+        } catch (IOException ex) {
+            getLogger().log(Level.SEVERE, "Failed to open the attribution journal, attributions will not survive a restart", ex);
+            journal = null;
+        }
+    }
+
+    private void registerGauges() {
+        metrics.gauge("location_cache_size", locationCache::size);
+        metrics.gauge("location_cache_partitions", locationCache::partitions);
+        metrics.counter("location_cache_hits", locationCache::hitCount);
+        metrics.counter("location_cache_misses", locationCache::missCount);
+        metrics.counter("location_cache_evictions", locationCache::evictionCount);
+        metrics.gauge("entity_cache_size", entityCache::size);
+        metrics.counter("entity_cache_hits", entityCache::hitCount);
+        metrics.counter("entity_cache_misses", entityCache::missCount);
+        metrics.counter("entity_cache_evictions", entityCache::evictionCount);
+        if (coldStore != null) {
+            metrics.gauge("cold_tier_size", coldStore::size);
+            metrics.gauge("cold_tier_capacity", coldStore::capacity);
+            metrics.counter("cold_tier_demotions", coldStore::demotedCount);
+            metrics.counter("cold_tier_promotions", coldStore::promotedCount);
+            metrics.counter("cold_tier_replacements", coldStore::replacedCount);
+        }
+        metrics.gauge("region_index_size", regions::size);
+        metrics.counter("region_index_hits", regions::hitCount);
+        metrics.counter("region_index_misses", regions::missCount);
+        metrics.gauge("reason_dictionary_size", reasons::size);
+        metrics.counter("reason_dictionary_evictions", reasons::evictionCount);
+        metrics.gauge("logging_queue_batches", logPipeline::queued);
+        metrics.counter("logging_batches_submitted", logPipeline::submitted);
+        metrics.counter("coreprotect_pipeline_calls", logPipeline::logged);
+        metrics.counter("logging_batches_inline", logPipeline::loggedInline);
+        metrics.gauge("coalescer_pending", coalescer::pending);
+        metrics.counter("coalescer_events", coalescer::recorded);
+        metrics.counter("coalescer_rows_logged", coalescer::logged);
+        metrics.counter("coalescer_rows_saved", coalescer::saved);
+        if (journal != null) metrics.gauge("journal_bytes", journal::size);
+        if (warmStart != null) {
+            metrics.gauge("warm_start_areas_total", warmStart::pagesTotal);
+            metrics.gauge("warm_start_areas_done", warmStart::pagesDone);
+            metrics.gauge("warm_start_elapsed_millis", warmStart::elapsedMillis);
+            metrics.counter("warm_start_restored", warmStart::restored);
+        }
+        metrics.counter("dispensed_tnt_stamped", dispenses::stamped);
+        metrics.gauge("explosion_chains_active", chains::activeChains);
+        metrics.gauge("explosion_chain_max_size", chains::maxSize);
+        metrics.gauge("explosion_chain_max_depth", chains::maxDepth);
+        metrics.counter("explosion_chain_links", chains::links);
+        metrics.counter("explosion_chains_completed", chains::completed);
+        metrics.gauge("explosion_admission_degraded", () -> admission.isDegraded() ? 1 : 0);
+        metrics.counter("explosions_logged_full", admission::full);
+        metrics.counter("explosions_logged_degraded", admission::degraded);
+        metrics.counter("explosion_overloads", admission::overloads);
+        metrics.counter("explosion_blocks_summarised", admission::summarisedBlocks);
+        metrics.counter("alerts_submitted", alerts::submitted);
+        metrics.counter("alerts_merged", alerts::merged);
+        metrics.counter("alerts_sent", alerts::sent);
+        metrics.counter("alerts_rate_limited", alerts::rateLimited);
+    }
+
+    // Runs on the async scheduler, every metric source tolerates being read off its owning thread
+    private void writeMetricsFile() {
+        Path target = getDataFolder().toPath().resolve("metrics.prom");
+        try {
+            Path temp = target.resolveSibling("metrics.prom.tmp");
+            Files.writeString(temp, metrics.toPrometheus(), StandardCharsets.UTF_8);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            getLogger().warning("Failed to write " + target + ": " + ex.getMessage());
+        }
+    }
+
+    // Entities expire here, block shards are swept by the region owning them
+    private void cleanUp() {
+        entityCache.cleanUp(reasons);
+        chains.cleanUp(reasons);
+        regions.cleanUp(reasons);
+        locationCache.forEachShard((uid, chunkX, chunkZ) -> {
+            World world = Bukkit.getWorld(uid);
+            if (world == null) return;
+            Bukkit.getRegionScheduler().execute(this, world, chunkX, chunkZ, () -> locationCache.cleanUp(uid, chunkX, chunkZ, reasons));
+        });
+        // Reasons still held were marked by these sweeps or the last ones, the cold tier and the replayed journal
+        // entries are long scans off the tick
+        Bukkit.getAsyncScheduler().runNow(this, task -> {
+            if (coldStore != null) coldStore.mark(reasons);
+            locationCache.cleanUpReplayed(reasons);
+            reasons.cleanUp();
+        });
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 1 && args[0].equalsIgnoreCase("reload")) {
+            reloadConfig();
+            settings = Settings.compile(getConfig());
+            registerRoutedHandlers();
+            sender.sendMessage(ChatColor.GREEN + "CPTNTExt configuration reloaded. Journal and logging queue settings apply after a restart.");
+            return true;
+        }
+        if (args.length >= 1 && args[0].equalsIgnoreCase("trace")) {
+            trace(sender, args.length > 1 ? args[1] : "");
+            return true;
+        }
+        if (args.length >= 2 && args.length <= 3 && args[0].equalsIgnoreCase("inspect")) {
+            inspect(sender, args[1], args.length > 2 ? args[2] : null);
+            return true;
+        }
+        if (args.length == 1 && args[0].equalsIgnoreCase("routes")) {
+            sender.sendMessage(ChatColor.GOLD + "Entity event routes (hits since last reload):");
+            for (EntityEventDispatcher<?> dispatcher : dispatchers) {
+                for (EntityEventDispatcher.Route<?> route : dispatcher.routes()) {
+                    sender.sendMessage(ChatColor.GRAY + " " + route.name() + ": " + ChatColor.WHITE + route.hits());
+                }
+            }
+            return true;
+        }
+        if (args.length == 1 && args[0].equalsIgnoreCase("chains")) {
+            sender.sendMessage(ChatColor.GOLD + "Explosion chains: " + chains.activeChains() + " active, " + chains.completed()
+                    + " completed, largest " + chains.maxSize() + " explosions, deepest " + chains.maxDepth() + " hops");
+            long now = System.currentTimeMillis();
+            for (ExplosionChains.Chain chain : chains.largestChains(10)) {
+                sender.sendMessage(ChatColor.GRAY + " " + reasons.name(chain.root()) + ": " + ChatColor.WHITE + chain.size()
+                        + " explosions, depth " + chain.depth() + ", " + TimeUnit.MILLISECONDS.toSeconds(now - chain.started()) + "s");
+            }
+            return true;
+        }
+        if (args.length == 1 && args[0].equalsIgnoreCase("stats")) {
+            sendStats(sender);
+            return true;
+        }
+        return false;
+    }
+
+    private void trace(CommandSender sender, String action) {
+        TraceRecorder current = trace;
+        if (action.equalsIgnoreCase("start")) {
+            if (current != null && !current.isClosed()) {
+                sender.sendMessage(ChatColor.RED + "Already recording to " + current.file().getFileName());
+                return;
+            }
+            Path file = getDataFolder().toPath().resolve("traces").resolve("trace-" + System.currentTimeMillis() + ".bin");
+            long maxBytes = Math.max(1, getConfig().getLong("trace.max-size-mb", 256)) << 20;
+            try {
+                startTrace(TraceRecorder.open(file, maxBytes, getLogger()));
+            } catch (IOException ex) {
+                sender.sendMessage(ChatColor.RED + "Failed to open " + file + ": " + ex.getMessage());
+                return;
+            }
+            sender.sendMessage(ChatColor.GREEN + "Recording events to " + file.getFileName());
+            return;
+        }
+        if (action.equalsIgnoreCase("stop")) {
+            if (current == null) {
+                sender.sendMessage(ChatColor.RED + "Not recording");
+                return;
+            }
+            stopTrace();
+            sender.sendMessage(ChatColor.GREEN + "Recorded " + current.records() + " events (" + (current.bytes() >> 10) + " KiB) to " + current.file().getFileName());
+            return;
+        }
+        if (current == null || current.isClosed()) {
+            sender.sendMessage(ChatColor.GRAY + "Not recording" + (current != null ? ", last trace " + current.file().getFileName() : ""));
+        } else {
+            sender.sendMessage(ChatColor.GRAY + "Recording to " + current.file().getFileName() + ": " + current.records() + " events, " + (current.bytes() >> 10) + " KiB");
+        }
+    }
+
+    // Answered from the stores on the region owning the player, nothing is looked up in CoreProtect's database
+    private void inspect(CommandSender sender, String radiusArg, String timeArg) {
+        if (!(sender instanceof Player player)) {
+            sender.sendMessage(ChatColor.RED + "Only players can inspect their surroundings");
+            return;
+        }
+        int radius;
+        try {
+            radius = Integer.parseInt(radiusArg);
+        } catch (NumberFormatException ex) {
+            radius = -1;
+        }
+        if (radius < 1 || radius > MAX_INSPECT_RADIUS) {
+            sender.sendMessage(ChatColor.RED + "Radius must be between 1 and " + MAX_INSPECT_RADIUS);
+            return;
+        }
+        long window = timeArg == null ? Long.MAX_VALUE : parseDuration(timeArg);
+        if (window < 0) {
+            sender.sendMessage(ChatColor.RED + "Invalid time " + timeArg + ", use for example 30s, 10m, 2h or 1d");
+            return;
+        }
+        int r = radius;
+        Location location = player.getLocation();
+        Bukkit.getRegionScheduler().execute(this, location, () -> sendInspection(player, location, r, window, timeArg));
+    }
+
+    private void sendInspection(Player player, Location location, int radius, long window, String timeArg) {
+        long started = System.nanoTime();
+        long now = System.currentTimeMillis();
+        long since = window == Long.MAX_VALUE ? 0 : now - window;
+        World world = location.getWorld();
+        int x = location.getBlockX(), z = location.getBlockZ();
+        Map<Integer, Tally> tallies = new HashMap<>();
+        int blocks = locationCache.inspect(world, x, z, radius, since,
+                (bx, by, bz, reason, accessed) -> tallies.computeIfAbsent(reason, Tally::new).blocks(accessed));
+        int areas = regions.inspect(world, x, z, radius, since,
+                (reason, minX, minY, minZ, maxX, maxY, maxZ, lastAccess) -> tallies.computeIfAbsent(reason, Tally::new).areas(lastAccess));
+        int entities = 0;
+        int halfHeight = (world.getMaxHeight() - world.getMinHeight()) / 2;
+        Location center = new Location(world, x + 0.5, world.getMinHeight() + halfHeight, z + 0.5);
+        for (Entity entity : world.getNearbyEntities(center, radius, halfHeight, radius)) {
+            int reason = entityCache.peek(entity.getEntityId(), since);
+            if (reason == ReasonDictionary.NONE) continue;
+            tallies.computeIfAbsent(reason, Tally::new).entities(now);
+            entities++;
+        }
+        String scope = "within " + radius + " blocks" + (timeArg != null ? " in the last " + timeArg : "");
+        String elapsed = String.format(Locale.ROOT, "%.1f ms", (System.nanoTime() - started) / 1e6);
+        if (tallies.isEmpty()) {
+            player.sendMessage(ChatColor.GRAY + "No attributions " + scope + " (" + elapsed + ")");
+            return;
+        }
+        player.sendMessage(ChatColor.GOLD + "Attributions " + scope + ": " + blocks + " blocks, " + areas + " areas, "
+                + entities + " entities (" + elapsed + ")");
+        List<Tally> sorted = new ArrayList<>(tallies.values());
+        sorted.sort(Comparator.comparingInt(Tally::total).reversed());
+        for (Tally tally : sorted.subList(0, Math.min(INSPECT_LINES, sorted.size()))) {
+            String name = reasons.name(tally.reason);
+            player.sendMessage(ChatColor.GRAY + " " + (name != null ? name : "?") + ": " + ChatColor.WHITE + tally.blocks + " blocks, "
+                    + tally.areas + " areas, " + tally.entities + " entities, last " + formatAge(now - tally.latest) + " ago");
+        }
+        if (sorted.size() > INSPECT_LINES) player.sendMessage(ChatColor.GRAY + " and " + (sorted.size() - INSPECT_LINES) + " more");
+    }
+
+    // 30s, 10m, 2h, 1d; -1 when unparseable
+    private static long parseDuration(String value) {
+        if (value.length() < 2) return -1;
+        TimeUnit unit = switch (Character.toLowerCase(value.charAt(value.length() - 1))) {
+            case 's' -> TimeUnit.SECONDS;
+            case 'm' -> TimeUnit.MINUTES;
+            case 'h' -> TimeUnit.HOURS;
+            case 'd' -> TimeUnit.DAYS;
+            default -> null;
+        };
+        if (unit == null) return -1;
+        try {
+            long amount = Long.parseLong(value.substring(0, value.length() - 1));
+            return amount < 0 ? -1 : unit.toMillis(amount);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static String formatAge(long millis) {
+        long seconds = Math.max(0, TimeUnit.MILLISECONDS.toSeconds(millis));
+        if (seconds < 60) return seconds + "s";
+        if (seconds < 3600) return seconds / 60 + "m";
+        return seconds / 3600 + "h";
+    }
+
+    // Per reason counts of one inspection
+    private static final class Tally {
+        final int reason;
+        int blocks, areas, entities;
+        long latest;
+
+        Tally(int reason) {
+            this.reason = reason;
+        }
+
+        void blocks(long accessed) {
+            blocks++;
+            latest = Math.max(latest, accessed);
+        }
+
+        void areas(long accessed) {
+            areas++;
+            latest = Math.max(latest, accessed);
+        }
+
+        void entities(long accessed) {
+            entities++;
+            latest = Math.max(latest, accessed);
+        }
+
+        int total() {
+            return blocks + areas + entities;
+        }
+    }
+
+    // Captures events once other plugins have settled them and before the MONITOR handlers log them
+    private void startTrace(TraceRecorder recorder) {
+        trace = recorder;
+        recordTrace(PlayerInteractEvent.class, true, e -> {
+            if (e.getAction() == Action.RIGHT_CLICK_BLOCK && e.getClickedBlock() != null) recorder.interactBlock(e.getPlayer(), e.getClickedBlock());
+        });
+        recordTrace(BlockPlaceEvent.class, true, e -> recorder.blockPlace(e.getPlayer(), e.getBlock()));
+        recordTrace(BlockBreakEvent.class, true, e -> recorder.blockBreak(e.getPlayer(), e.getBlock()));
+        recordTrace(BlockPistonExtendEvent.class, true, e -> recorder.piston(e.getBlock(), e.getDirection(), true, e.getBlocks()));
+        recordTrace(BlockPistonRetractEvent.class, true, e -> recorder.piston(e.getBlock(), e.getDirection(), false, e.getBlocks()));
+        recordTrace(BlockDispenseEvent.class, true, e -> recorder.dispense(e.getBlock(), e.getItem().getType()));
+        recordTrace(ProjectileLaunchEvent.class, true, e -> recorder.projectileLaunch(e.getEntity()));
+        recordTrace(EntitySpawnEvent.class, true, e -> {
+            if (e.getEntity() instanceof TNTPrimed tnt) recorder.tntSpawn(tnt);
+        });
+        recordTrace(ProjectileHitEvent.class, true, e -> {
+            if (e.getHitEntity() != null) recorder.projectileHit(e.getEntity(), e.getHitEntity());
+        });
+        recordTrace(EntityRemoveFromWorldEvent.class, false, e -> recorder.entityRemove(e.getEntity(), e.getCause().ordinal()));
+        recordTrace(EntityDamageByEntityEvent.class, true, e -> recorder.damage(e.getEntity(), e.getDamager()));
+        recordTrace(PlayerInteractEntityEvent.class, true, e -> recorder.interactEntity(e.getPlayer(), e.getRightClicked()));
+        recordTrace(BlockExplodeEvent.class, true, e -> recorder.blockExplode(e.getBlock(), e.blockList()));
+        recordTrace(EntityExplodeEvent.class, true, e -> recorder.entityExplode(e.getEntity(), e.getLocation(), e.blockList()));
+        recordTrace(BlockIgniteEvent.class, true, e -> recorder.blockIgnite(e.getBlock(), e.getCause().ordinal(), e.getIgnitingEntity(), e.getIgnitingBlock()));
+        recordTrace(BlockBurnEvent.class, true, e -> recorder.blockBurn(e.getBlock(), e.getIgnitingBlock()));
+        recordTrace(HangingBreakEvent.class, true, e -> recorder.hangingBreak(e.getEntity(), e.getCause().ordinal()));
+    }
+
+    private void stopTrace() {
+        HandlerList.unregisterAll(traceListener);
+        TraceRecorder current = trace;
+        if (current != null) current.close();
+    }
+
+    private <T extends Event> void recordTrace(Class<T> type, boolean ignoreCancelled, Consumer<T> recorder) {
+        Bukkit.getPluginManager().registerEvent(type, traceListener, EventPriority.HIGHEST, (listener, event) -> {
+            if (type.isInstance(event)) recorder.accept(type.cast(event));
+        }, this, ignoreCancelled);
+    }
+
+    private void sendStats(CommandSender sender) {
+        sender.sendMessage(ChatColor.GOLD + "Handler latency (count, mean, p50, p99, max):");
+        for (Map.Entry<String, Metrics.Timer> entry : metrics.timers().entrySet()) {
+            Metrics.Timer timer = entry.getValue();
+            long count = timer.count();
+            if (count == 0) continue;
+            sender.sendMessage(ChatColor.GRAY + " " + entry.getKey() + ": " + ChatColor.WHITE + count + ", "
+                    + micros(timer.totalNanos() / count) + ", " + micros(timer.percentileNanos(0.5)) + ", "
+                    + micros(timer.percentileNanos(0.99)) + ", " + micros(timer.maxNanos()));
+        }
+        sender.sendMessage(ChatColor.GOLD + "Counters:");
+        for (Map.Entry<String, Long> entry : metrics.counterValues().entrySet()) {
+            sender.sendMessage(ChatColor.GRAY + " " + entry.getKey() + ": " + ChatColor.WHITE + entry.getValue());
+        }
+        sender.sendMessage(ChatColor.GOLD + "Gauges:");
+        for (Map.Entry<String, LongSupplier> entry : metrics.gauges().entrySet()) {
+            sender.sendMessage(ChatColor.GRAY + " " + entry.getKey() + ": " + ChatColor.WHITE + entry.getValue().getAsLong());
+        }
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.1fus", nanos / 1000.0);
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        if (args.length == 2 && args[0].equalsIgnoreCase("trace")) return List.of("start", "stop");
+        if (args.length == 2 && args[0].equalsIgnoreCase("inspect")) return List.of("16", "64", "128");
+        if (args.length == 3 && args[0].equalsIgnoreCase("inspect")) return List.of("10m", "1h", "1d");
+        return args.length == 1 ? List.of("reload", "routes", "stats", "chains", "trace", "inspect") : List.of();
+    }
+
+    // Handlers of disabled sections are not registered at all instead of returning early on every event
+    private void registerRoutedHandlers() {
+        HandlerList.unregisterAll(routedListener);
+        Settings current = settings;
+
+        // Attribution tracking and store lifecycle, always on
+        register("bed-anchor-interact", PlayerInteractEvent.class, EventPriority.MONITOR, true, this::onPlayerInteractBedOrRespawnAnchorExplosion);
+        register("block-place", BlockPlaceEvent.class, EventPriority.MONITOR, true, this::onBlockPlaceOnHanging);
+        register("block-break", BlockBreakEvent.class, EventPriority.MONITOR, true, this::onBlockBreak);
+        register("piston-extend", BlockPistonExtendEvent.class, EventPriority.MONITOR, true, this::onPistonExtend);
+        register("piston-retract", BlockPistonRetractEvent.class, EventPriority.MONITOR, true, this::onPistonRetract);
+        register("dispense", BlockDispenseEvent.class, EventPriority.MONITOR, true, this::onDispense);
+        register("projectile-launch", ProjectileLaunchEvent.class, EventPriority.MONITOR, true, this::onProjectileLaunch);
+        register("tnt-spawn", EntitySpawnEvent.class, EventPriority.MONITOR, true, this::onIgniteTNT);
+        register("bomb-hit", ProjectileHitEvent.class, EventPriority.LOWEST, true, this::onBombHit);
+        register("world-unload", WorldUnloadEvent.class, EventPriority.MONITOR, true, this::onWorldUnload);
+        register("chunk-load", ChunkLoadEvent.class, EventPriority.MONITOR, false, this::onChunkLoad);
+        register("chunk-unload", ChunkUnloadEvent.class, EventPriority.MONITOR, false, this::onChunkUnload);
+        register("entity-remove", EntityRemoveFromWorldEvent.class, EventPriority.MONITOR, false, this::onEntityRemove);
+        register("entity-death", EntityDeathEvent.class, EventPriority.MONITOR, true, this::onEntityDeath);
+        register("entities-unload", EntitiesUnloadEvent.class, EventPriority.MONITOR, false, this::onEntitiesUnload);
+        register("entities-load", EntitiesLoadEvent.class, EventPriority.MONITOR, false, this::onEntitiesLoad);
+        // Ignition sources feed TNT and bed attribution too, fire.enable only gates their logging and cancelling
+        register("block-ignite", BlockIgniteEvent.class, EventPriority.MONITOR, true, this::onBlockIgnite);
+        register("block-burn", BlockBurnEvent.class, EventPriority.MONITOR, true, this::onBlockBurn);
+
+        // Entity interactions: tracking at LOWEST, logging at MONITOR, one dispatcher each
+        EntityEventDispatcher<EntityDamageByEntityEvent> damageTracking = new EntityEventDispatcher<>(
+                EntityDamageByEntityEvent.class, EntityDamageByEntityEvent::getEntity, EntityDamageByEntityEvent::getDamager)
+                .onTarget("end-crystal-hit", EnderCrystal.class, this::onEndCrystalHit)
+                .onTarget("minecart-hit", ExplosiveMinecart.class, this::onExplosiveMinecartHit)
+                .onSource("projectile-hit", Projectile.class, this::onEntityHitByProjectile);
+        EntityEventDispatcher<EntityDamageByEntityEvent> damageLogging = new EntityEventDispatcher<>(
+                EntityDamageByEntityEvent.class, EntityDamageByEntityEvent::getEntity, null);
+        EntityEventDispatcher<PlayerInteractEntityEvent> interactLogging = new EntityEventDispatcher<>(
+                PlayerInteractEntityEvent.class, PlayerInteractEntityEvent::getRightClicked, null)
+                .onTarget("creeper-ignite", Creeper.class, this::onPlayerInteractCreeper);
+        if (current.itemFrame().enable()) {
+            damageLogging.onTarget("item-frame-hit", ItemFrame.class, this::onHangingHit);
+            interactLogging.onTarget("item-frame-click", ItemFrame.class, this::onClickItemFrame);
+        }
+        if (current.painting().enable()) {
+            damageLogging.onTarget("painting-hit", Painting.class, this::onPaintingHit);
+        }
+        register("damage-tracking", damageTracking, EventPriority.LOWEST);
+        register("damage-logging", damageLogging, EventPriority.MONITOR);
+        register("interact-logging", interactLogging, EventPriority.MONITOR);
+        dispatchers = List.of(damageTracking, damageLogging, interactLogging);
+
+        if (current.blockExplosion().enable()) {
+            register("block-explode", BlockExplodeEvent.class, EventPriority.MONITOR, true, admission.timed(this::onBlockExplode));
+        }
+        if (current.hanging().enable()) {
+            register("hanging-break", HangingBreakEvent.class, EventPriority.MONITOR, true, this::onHangingBreak);
+        }
+        if (current.entityExplosion().enable()) {
+            register("entity-explode", EntityExplodeEvent.class, EventPriority.MONITOR, true, admission.timed(this::onExplode));
+        }
+    }
+
+    private <T extends Event> void register(String name, Class<T> type, EventPriority priority, boolean ignoreCancelled, Consumer<T> handler) {
+        Metrics.Timer timer = metrics.timer(name);
+        // Subclasses share their parent's handler list (EntityDamageByEntityEvent -> EntityDamageEvent), filter them here
+        Bukkit.getPluginManager().registerEvent(type, routedListener, priority, (listener, event) -> {
+            if (!type.isInstance(event)) return;
+            long started = System.nanoTime();
+            try {
+                handler.accept(type.cast(event));
+            } finally {
+                timer.record(System.nanoTime() - started);
+            }
+        }, this, ignoreCancelled);
+    }
+
+    private <T extends Event> void register(String name, EntityEventDispatcher<T> dispatcher, EventPriority priority) {
+        if (dispatcher.isEmpty()) return;
+        register(name, dispatcher.eventType(), priority, true, dispatcher::dispatch);
     }
 
     /* ---------- HELPERS ---------- */
 
-    private void putLocation(Location loc, String reason) {
-        if (loc == null || reason == null) return;
-        locationCache.put(BlockPos.of(loc), reason);
+    private int actor(Entity entity) {
+        return reasons.actor(entity.getName());
+    }
+
+    private void putLocation(Location loc, int reason) {
+        if (loc == null || reason == ReasonDictionary.NONE) return;
+        putPosition(loc.getWorld(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(), reason);
     }
 
-    private String getLocationReason(Location loc) {
-        if (loc == null) return null;
-        return locationCache.getIfPresent(BlockPos.of(loc));
+    private void putBlock(Block b, int reason) {
+        if (b == null || reason == ReasonDictionary.NONE) return;
+        putPosition(b.getWorld(), b.getX(), b.getY(), b.getZ(), reason);
     }
 
-    private void putBlock(Block b, String reason) {
-        if (b == null || reason == null) return;
-        locationCache.put(BlockPos.of(b), reason);
+    private void putPosition(World world, int x, int y, int z, int reason) {
+        locationCache.put(world, x, y, z, reason);
+        if (journal != null) journal.append(world.getUID(), x, y, z, reason);
     }
 
-    private void putEntity(Entity e, String reason) {
-        if (e == null || reason == null) return;
-        entityCache.put(e, reason);
+    // Exact attribution first, then the crater or fire the block lies in
+    // Exact entries only, an area box is no evidence of who used a block later on
+    private int getBlockReason(Block b) {
+        if (b == null) return ReasonDictionary.NONE;
+        return locationCache.get(b.getWorld(), b.getX(), b.getY(), b.getZ());
     }
 
-    private String getEntityReason(Entity e) {
-        if (e == null) return null;
-        return entityCache.getIfPresent(e);
+    // Also the crater or fire box covering the block, for what the explosion or spreading fire itself caused
+    private int getAreaReason(Block b) {
+        if (b == null) return ReasonDictionary.NONE;
+        int reason = getBlockReason(b);
+        if (reason != ReasonDictionary.NONE) return reason;
+        return regions.get(b.getWorld(), b.getX(), b.getY(), b.getZ());
     }
 
-    private void logRemovalForBlocks(String reason, List<Block> blocks) {
-        if (reason == null || blocks == null) return;
-        for (Block block : blocks) {
-            api.logRemoval(reason, block.getLocation(), block.getType(), block.getBlockData());
-            putBlock(block, reason);
+    private void moveBlocks(List<Block> blocks, BlockFace direction) {
+        if (blocks.isEmpty()) return;
+        World world = blocks.get(0).getWorld();
+        AttributionJournal journal = this.journal;
+        UUID uid = world.getUID();
+        int moved = locationCache.move(world, blocks, direction.getModX(), direction.getModY(), direction.getModZ(), (x, y, z, reason) -> {
+            if (journal == null) return;
+            if (reason == ReasonDictionary.NONE) {
+                journal.remove(uid, x, y, z);
+            } else {
+                journal.append(uid, x, y, z, reason);
+            }
+        });
+        pistonMoves.add(moved);
+    }
+
+    private void extendFire(Block b, int reason) {
+        regions.extend(b.getWorld(), b.getX(), b.getY(), b.getZ(), reason);
+    }
+
+    // Reason stored at the block under the entity's north-west corner, where a primed TNT / minecart was spawned from.
+    private int getCornerReason(Entity entity) {
+        Location loc = entity.getLocation();
+        return locationCache.get(loc.getWorld(), Location.locToBlock(loc.getX() - 0.5), loc.getBlockY(), Location.locToBlock(loc.getZ() - 0.5));
+    }
+
+    private void putEntity(Entity e, int reason) {
+        if (e == null || reason == ReasonDictionary.NONE) return;
+        entityCache.put(e.getEntityId(), reason);
+    }
+
+    private int getEntityReason(Entity e) {
+        if (e == null) return ReasonDictionary.NONE;
+        return entityCache.get(e.getEntityId());
+    }
+
+    private void pageOut(Chunk chunk) {
+        byte[] data = locationCache.pageOut(chunk.getWorld(), chunk.getX(), chunk.getZ(), reasons);
+        if (data == null) return;
+        if (data.length > 0) {
+            chunk.getPersistentDataContainer().set(blocksKey, PersistentDataType.BYTE_ARRAY, data);
+        } else {
+            chunk.getPersistentDataContainer().remove(blocksKey);
+        }
+    }
+
+    // Every load, a chunk without a page may still have replayed journal entries waiting
+    private void pageIn(Chunk chunk) {
+        byte[] data = chunk.getPersistentDataContainer().get(blocksKey, PersistentDataType.BYTE_ARRAY);
+        try {
+            locationCache.pageIn(chunk.getWorld(), chunk.getX(), chunk.getZ(), data, reasons);
+        } catch (IOException ex) {
+            getLogger().warning("Dropping unreadable attributions of chunk " + chunk.getX() + "," + chunk.getZ() + ": " + ex.getMessage());
+            chunk.getPersistentDataContainer().remove(blocksKey);
+        }
+    }
+
+    // One chain step per explosion: the crater goes to CoreProtect and the TNT it primes inherits root,
+    // the destroyed blocks are covered by a single region for the fires they start
+    private void logExplosion(Entity entity, int root, int reason, List<Block> blocks) {
+        if (reason == ReasonDictionary.NONE || blocks == null) return;
+        if (!blocks.isEmpty()) {
+            Block first = blocks.get(0);
+            switch (admission.admit(settings.explosionLimits(), first.getWorld(), first.getX() >> 4, first.getZ() >> 4)) {
+                case FULL -> logPipeline.submitRemovals(reasons.name(reason), blocks, admission.overBudget(settings.explosionLimits()));
+                case DEGRADED -> admission.summarise(reason, blocks);
+                case OVERLOADED -> {
+                    admission.summarise(reason, blocks);
+                    alertOverload(first.getLocation());
+                }
+            }
+        }
+        chains.exploded(entity, root, blocks);
+        regions.add(blocks, root);
+        TraceRecorder recorder = trace;
+        if (recorder != null && !blocks.isEmpty()) recorder.outcome(blocks.get(0), reasons.name(reason));
+    }
+
+    private void logRemoval(String user, Location location, Material type, BlockData data) {
+        coreProtectCalls.increment();
+        api.logRemoval(user, location, type, data);
+    }
+
+    private void logPlacement(String user, Location location, Material type, BlockData data) {
+        coreProtectCalls.increment();
+        api.logPlacement(user, location, type, data);
+    }
+
+    private void logInteraction(String user, Location location) {
+        coreProtectCalls.increment();
+        api.logInteraction(user, location);
+    }
+
+    // Sent with the next tick's batch, merged with the same alert from the same chunk
+    private void alert(Location location, Component message) {
+        if (message == null) return;
+        alerts.submit(location, message);
+    }
+
+    // Unknown explosions are cancelled either way and not admitted, under load their alerts fold into the overload alert
+    private void alertExplosion(Location location, Component message) {
+        if (admission.isDegraded()) return;
+        alert(location, message);
+    }
+
+    private void alertOverload(Location location) {
+        getLogger().warning("Explosion load over the configured limits near " + location.getWorld().getName() + " "
+                + location.getBlockX() + "," + location.getBlockY() + "," + location.getBlockZ() + ", summarising block logging per chunk");
+        alert(location, settings.explosionLimits().alert());
+    }
+
+    // One stand-in removal per chunk and reason, under the reason's own name so lookups by user still find it.
+    // On shutdown they are held for logPipeline.shutdown(), which has to run after this.
+    private void flushSummaries(boolean shutdown) {
+        int[] totals = new int[3];
+        admission.drain(summary -> {
+            logPipeline.submitRemoval(reasons.name(summary.reason()), summary.world(), summary.position(), summary.type(), summary.data(), shutdown);
+            totals[0]++;
+            totals[1] += summary.explosions();
+            totals[2] += summary.blocks();
+        });
+        if (totals[0] == 0) return;
+        getLogger().info("Summarised " + totals[1] + " explosions (" + totals[2] + " blocks) into " + totals[0] + " CoreProtect entries");
+    }
+
+    // Entities going by their type's name share one prefix per type, only players and named ones build theirs.
+    // Marked prefixes start with '#', a player's own projectiles go without.
+    private String namePrefix(Entity entity, boolean marked) {
+        if (entity instanceof Player || entity.customName() != null) return (marked ? "#" : "") + entity.getName() + "-";
+        Map<EntityType, String> prefixes = marked ? namePrefixes : playerNamePrefixes;
+        String prefix = prefixes.get(entity.getType());
+        if (prefix == null) {
+            prefix = (marked ? "#" : "") + entity.getName() + "-";
+            prefixes.put(entity.getType(), prefix);
+        }
+        return prefix;
+    }
+
+    private static <E extends Enum<E>> Map<E, String> prefixes(Class<E> type, Function<E, String> prefix) {
+        Map<E, String> prefixes = new EnumMap<>(type);
+        for (E constant : type.getEnumConstants()) prefixes.put(constant, prefix.apply(constant));
+        return prefixes;
+    }
+
+    // The entity is out of the world for good, its attribution and chain go with it
+    private void forgetEntity(Entity entity) {
+        entityCache.invalidate(entity.getEntityId());
+        chains.removed(entity);
+    }
+
+    // Entity side effects run on the thread owning it, inline when that is already the current one
+    private void removeEntity(Entity entity) {
+        if (Bukkit.isOwnedByCurrentRegion(entity)) {
+            entity.remove();
+        } else {
+            entity.getScheduler().run(this, task -> entity.remove(), null);
         }
     }
 
     /* ---------- EVENTS ---------- */
 
     // Bed / Respawn anchor interaction
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
     public void onPlayerInteractBedOrRespawnAnchorExplosion(PlayerInteractEvent e) {
         if (e.getAction() != Action.RIGHT_CLICK_BLOCK) return;
         Block clickedBlock = e.getClickedBlock();
@@ -124,338 +853,422 @@ public class CPTNTExt extends JavaPlugin implements Listener {
             if (bed.getPart() == Bed.Part.FOOT) {
                 locationHead.add(bed.getFacing().getDirection());
             }
-            String reason = "#bed-" + e.getPlayer().getName();
+            int reason = reasons.compose("#bed-", actor(e.getPlayer()));
             putLocation(locationHead, reason);
             putLocation(locationFoot, reason);
         }
 
         if (clickedBlock.getBlockData() instanceof RespawnAnchor) {
-            putBlock(clickedBlock, "#respawnanchor-" + e.getPlayer().getName());
+            putBlock(clickedBlock, reasons.compose("#respawnanchor-", actor(e.getPlayer())));
         }
     }
 
-    // Creeper ignite (player right-click creeper)
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    // Creeper ignite (player right-click creeper), routed by the interact dispatcher
     public void onPlayerInteractCreeper(PlayerInteractEntityEvent e) {
         if (!(e.getRightClicked() instanceof Creeper creeper)) return;
-        putEntity(creeper, "#ignitecreeper-" + e.getPlayer().getName());
+        putEntity(creeper, reasons.compose("#ignitecreeper-", actor(e.getPlayer())));
+    }
+
+    public void onWorldUnload(WorldUnloadEvent e) {
+        locationCache.invalidateWorld(e.getWorld().getUID());
+        regions.invalidateWorld(e.getWorld().getUID());
+        admission.invalidateWorld(e.getWorld().getUID());
+    }
+
+    // Chunk paging, block attributions only stay in memory while their chunk is loaded
+    public void onChunkLoad(ChunkLoadEvent e) {
+        pageIn(e.getChunk());
+    }
+
+    public void onChunkUnload(ChunkUnloadEvent e) {
+        pageOut(e.getChunk());
+    }
+
+    // Entity lifecycle, keeps the entity table in step with the world. An end crystal leaves the world before its
+    // explosion goes off, unlike TNT, so onExplode lets go of it instead.
+    public void onEntityRemove(EntityRemoveFromWorldEvent e) {
+        if (e.getEntity() instanceof EnderCrystal && e.getCause() == EntityRemoveEvent.Cause.EXPLODE) return;
+        forgetEntity(e.getEntity());
+    }
+
+    public void onEntityDeath(EntityDeathEvent e) {
+        entityCache.invalidate(e.getEntity().getEntityId());
+    }
+
+    // Carry attribution over chunk unload in the entity's PDC, TNT and creepers keep their reason when it reloads
+    public void onEntitiesUnload(EntitiesUnloadEvent e) {
+        for (Entity entity : e.getEntities()) {
+            int reason = entityCache.get(entity.getEntityId());
+            if (reason == ReasonDictionary.NONE) continue;
+            entityCache.invalidate(entity.getEntityId());
+            if (settings.persistEntities() && entity.isPersistent()) {
+                entity.getPersistentDataContainer().set(reasonKey, PersistentDataType.STRING, reasons.encode(reason));
+            }
+        }
+    }
+
+    public void onEntitiesLoad(EntitiesLoadEvent e) {
+        for (Entity entity : e.getEntities()) {
+            PersistentDataContainer pdc = entity.getPersistentDataContainer();
+            String reason = pdc.get(reasonKey, PersistentDataType.STRING);
+            if (reason == null) continue;
+            pdc.remove(reasonKey);
+            if (settings.persistEntities()) putEntity(entity, reasons.decode(reason));
+        }
     }
 
-    // Block explode
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    // Block explode, registered in registerRoutedHandlers
     public void onBlockExplode(BlockExplodeEvent e) {
-        ConfigurationSection section = Util.bakeConfigSection(getConfig(), "block-explosion");
-        if (!section.getBoolean("enable", true)) return;
+        Settings.Section section = settings.blockExplosion();
 
         Block origin = e.getBlock();
-        String cause = getLocationReason(origin.getLocation());
-        if (cause == null) {
-            if (section.getBoolean("disable-unknown", true)) {
+        int cause = getBlockReason(origin);
+        if (cause == ReasonDictionary.NONE) {
+            if (section.disableUnknown()) {
                 e.blockList().clear();
-                Util.broadcastNearPlayers(origin.getLocation(), section.getString("alert"));
+                cancelledBlockExplosions.increment();
+                alertExplosion(origin.getLocation(), section.alert());
                 return;
             } else {
                 return;
             }
         }
-        for (Block block : e.blockList()) {
-            api.logRemoval(cause, block.getLocation(), block.getType(), block.getBlockData());
-        }
+        logExplosion(null, cause, cause, e.blockList());
     }
 
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
     public void onBlockPlaceOnHanging(BlockPlaceEvent event) {
-        putBlock(event.getBlock(), event.getPlayer().getName());
+        putBlock(event.getBlock(), actor(event.getPlayer()));
     }
 
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
     public void onBlockBreak(BlockBreakEvent event) {
-        putBlock(event.getBlock(), event.getPlayer().getName());
+        putBlock(event.getBlock(), actor(event.getPlayer()));
+    }
+
+    // Moved blocks keep their attribution, so TNT a piston pushes in place still finds who placed it when primed
+    public void onPistonExtend(BlockPistonExtendEvent e) {
+        moveBlocks(e.getBlocks(), e.getDirection());
+    }
+
+    // Only sticky pistons pull anything, the direction is the one the blocks move in
+    public void onPistonRetract(BlockPistonRetractEvent e) {
+        moveBlocks(e.getBlocks(), e.getDirection());
     }
 
-    // ItemFrame interaction / add / rotate
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    // Dispensed TNT has no source, it inherits the dispenser's attribution through a stamp, see onIgniteTNT.
+    // Projectiles and flint and steel carry the dispenser themselves, see DispenseStamps.
+    public void onDispense(BlockDispenseEvent e) {
+        if (e.getItem().getType() != Material.TNT) return;
+        Block dispenser = e.getBlock();
+        if (!(dispenser.getBlockData() instanceof Directional directional)) return;
+        int reason = getBlockReason(dispenser);
+        if (reason == ReasonDictionary.NONE) return;
+        BlockFace facing = directional.getFacing();
+        dispenses.arm(dispenser.getWorld(), dispenser.getX() + facing.getModX(), dispenser.getY() + facing.getModY(), dispenser.getZ() + facing.getModZ(), reason);
+    }
+
+    // ItemFrame interaction / add / rotate, routed by the interact dispatcher
     public void onClickItemFrame(PlayerInteractEntityEvent e) {
         if (!(e.getRightClicked() instanceof ItemFrame itemFrame)) return;
-        ConfigurationSection section = Util.bakeConfigSection(getConfig(), "itemframe");
-        if (!section.getBoolean("enable", true)) return;
 
-        api.logInteraction(e.getPlayer().getName(), itemFrame.getLocation());
+        coalescer.interaction(e.getPlayer().getName(), itemFrame.getLocation());
 
         if (itemFrame.getItem().getType().isAir()) {
             ItemStack mainItem = e.getPlayer().getInventory().getItemInMainHand();
             ItemStack offItem = e.getPlayer().getInventory().getItemInOffHand();
             ItemStack putIn = mainItem.getType().isAir() ? offItem : mainItem;
             if (!putIn.getType().isAir()) {
-                api.logPlacement("#additem-" + e.getPlayer().getName(), itemFrame.getLocation(), putIn.getType(), null);
+                logPlacement("#additem-" + e.getPlayer().getName(), itemFrame.getLocation(), putIn.getType(), null);
                 return;
             }
         }
-        api.logRemoval("#rotate-" + e.getPlayer().getName(), itemFrame.getLocation(), itemFrame.getItem().getType(), null);
-        api.logPlacement("#rotate-" + e.getPlayer().getName(), itemFrame.getLocation(), itemFrame.getItem().getType(), null);
+        coalescer.rotate("#rotate-" + e.getPlayer().getName(), itemFrame.getLocation(), itemFrame.getItem().getType());
     }
 
     // Projectile launch
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
     public void onProjectileLaunch(ProjectileLaunchEvent e) {
         ProjectileSource projectileSource = e.getEntity().getShooter();
         if (projectileSource == null) return;
 
-        StringBuilder source = new StringBuilder();
-        if (!(projectileSource instanceof Player)) source.append("#");
-        source.append(e.getEntity().getName()).append("-");
-
+        String prefix = namePrefix(e.getEntity(), !(projectileSource instanceof Player));
+        int dispenser = projectileSource instanceof BlockProjectileSource block ? getBlockReason(block.getBlock()) : ReasonDictionary.NONE;
+        int source;
         if (projectileSource instanceof Entity ent) {
             if (ent instanceof Mob mob && mob.getTarget() != null) {
-                source.append(mob.getTarget().getName());
+                source = reasons.compose(prefix, actor(mob.getTarget()));
             } else {
-                source.append(ent.getName());
+                source = reasons.compose(prefix, actor(ent));
             }
-            putEntity(ent, source.toString());
+            putEntity(ent, source);
+        } else if (dispenser != ReasonDictionary.NONE) {
+            // Arrows and fire charges out of an attributed dispenser
+            source = reasons.compose(prefix, dispenser);
         } else if (projectileSource instanceof Block block) {
-            putBlock(block, source.toString());
+            source = reasons.compose(prefix, reasons.actor(""));
+            putBlock(block, source);
         } else {
-            source.append(projectileSource.getClass().getSimpleName());
+            source = reasons.compose(prefix, reasons.actor(projectileSource.getClass().getSimpleName()));
         }
 
-        putEntity(e.getEntity(), source.toString());
+        putEntity(e.getEntity(), source);
     }
 
     // TNT primed spawn
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
     public void onIgniteTNT(EntitySpawnEvent e) {
         if (!(e.getEntity() instanceof TNTPrimed tntPrimed)) return;
+        Location loc = tntPrimed.getLocation();
+        int dispensed = dispenses.take(loc.getWorld(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+        // Primed by an attributed explosion, the chain's root cause wins over the vanilla source
+        int chained = chains.primed(tntPrimed);
+        if (chained != ReasonDictionary.NONE) {
+            putEntity(tntPrimed, chained);
+            return;
+        }
+        if (dispensed != ReasonDictionary.NONE) {
+            putEntity(tntPrimed, dispensed);
+            return;
+        }
         Entity source = tntPrimed.getSource();
         if (source != null) {
-            String sourceFromEntity = getEntityReason(source);
-            if (sourceFromEntity != null) {
+            int sourceFromEntity = getEntityReason(source);
+            if (sourceFromEntity != ReasonDictionary.NONE) {
                 putEntity(tntPrimed, sourceFromEntity);
             }
             if (source.getType() == EntityType.PLAYER) {
-                putEntity(tntPrimed, source.getName());
+                putEntity(tntPrimed, actor(source));
                 return;
             }
         }
 
-        BlockPos pos = BlockPos.of(e.getEntity().getLocation().clone().subtract(0.5, 0, 0.5));
-        String locReason = locationCache.getIfPresent(pos);
-        if (locReason != null) {
+        int locReason = getCornerReason(tntPrimed);
+        if (locReason != ReasonDictionary.NONE) {
             putEntity(tntPrimed, locReason);
         }
     }
 
-    // HangingBreak
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    // HangingBreak, registered in registerRoutedHandlers
     public void onHangingBreak(HangingBreakEvent e) {
-        ConfigurationSection section = Util.bakeConfigSection(getConfig(), "hanging");
-        if (!section.getBoolean("enable", true)) return;
         if (e.getCause() == HangingBreakEvent.RemoveCause.PHYSICS || e.getCause() == HangingBreakEvent.RemoveCause.DEFAULT) return;
 
         Block hangingPosBlock = e.getEntity().getLocation().getBlock();
-        String reason = getLocationReason(hangingPosBlock.getLocation());
-        if (reason != null) {
+        int reason = e.getCause() == HangingBreakEvent.RemoveCause.EXPLOSION ? getAreaReason(hangingPosBlock) : getBlockReason(hangingPosBlock);
+        if (reason != ReasonDictionary.NONE) {
+            String user = reasons.name(reasons.compose(CAUSE_PREFIXES.get(e.getCause()), reason));
             Material mat = Material.matchMaterial(e.getEntity().getType().name());
             if (mat != null) {
-                api.logRemoval("#" + e.getCause().name() + "-" + reason, hangingPosBlock.getLocation(), mat, null);
+                logRemoval(user, hangingPosBlock.getLocation(), mat, null);
             } else {
-                api.logInteraction("#" + e.getCause().name() + "-" + reason, hangingPosBlock.getLocation());
+                logInteraction(user, hangingPosBlock.getLocation());
             }
         }
     }
 
-    // EnderCrystal rigged by entity
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.LOWEST)
+    // EnderCrystal rigged by entity, routed by the damage tracking dispatcher
     public void onEndCrystalHit(EntityDamageByEntityEvent e) {
         if (!(e.getEntity() instanceof EnderCrystal)) return;
         if (e.getDamager() instanceof Player player) {
-            putEntity(e.getEntity(), player.getName());
+            putEntity(e.getEntity(), actor(player));
         } else {
-            String src = getEntityReason(e.getDamager());
-            if (src != null) putEntity(e.getEntity(), src);
+            int chained = chains.link(e.getEntity(), e.getDamager());
+            if (chained != ReasonDictionary.NONE) {
+                putEntity(e.getEntity(), chained);
+                return;
+            }
+            int src = getEntityReason(e.getDamager());
+            if (src != ReasonDictionary.NONE) putEntity(e.getEntity(), src);
             else if (e.getDamager() instanceof Projectile projectile) {
                 if (projectile.getShooter() instanceof Player shooter) {
-                    putEntity(e.getEntity(), shooter.getName());
+                    putEntity(e.getEntity(), actor(shooter));
                 }
             }
         }
     }
 
-    // Hanging hit by entity (item frames & paintings treated separately)
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    // Hanging hit by entity (item frames & paintings treated separately), routed by the damage logging dispatcher
     public void onHangingHit(EntityDamageByEntityEvent e) {
         if (!(e.getEntity() instanceof Hanging)) return;
-        ConfigurationSection section = Util.bakeConfigSection(getConfig(), "itemframe");
-        if (!section.getBoolean("enable", true)) return;
 
         if (e.getEntity() instanceof ItemFrame itemFrame) {
             if (itemFrame.getItem().getType().isAir() || itemFrame.isInvulnerable()) return;
             if (e.getDamager() instanceof Player player) {
-                putEntity(e.getEntity(), player.getName());
-                api.logInteraction(player.getName(), itemFrame.getLocation());
-                api.logRemoval(player.getName(), itemFrame.getLocation(), itemFrame.getItem().getType(), null);
+                putEntity(e.getEntity(), actor(player));
+                coalescer.interaction(player.getName(), itemFrame.getLocation());
+                logRemoval(player.getName(), itemFrame.getLocation(), itemFrame.getItem().getType(), null);
             } else {
-                String cause = getEntityReason(e.getDamager());
-                if (cause != null) {
-                    String reason = "#" + e.getDamager().getName() + "-" + cause;
+                int cause = getEntityReason(e.getDamager());
+                if (cause != ReasonDictionary.NONE) {
+                    int reason = reasons.compose(namePrefix(e.getDamager(), true), cause);
                     putEntity(e.getEntity(), reason);
-                    api.logRemoval(reason, itemFrame.getLocation(), itemFrame.getItem().getType(), null);
+                    logRemoval(reasons.name(reason), itemFrame.getLocation(), itemFrame.getItem().getType(), null);
                 }
             }
         }
     }
 
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    // Routed by the damage logging dispatcher
     public void onPaintingHit(EntityDamageByEntityEvent e) {
         if (!(e.getEntity() instanceof Painting painting)) return;
-        ConfigurationSection section = Util.bakeConfigSection(getConfig(), "painting");
-        if (!section.getBoolean("enable", true)) return;
+        Settings.Section section = settings.painting();
 
         if (painting.isInvulnerable()) return;
 
         if (e.getDamager() instanceof Player player) {
-            api.logInteraction(player.getName(), painting.getLocation());
-            // Для картины нет item-type -> логируем взаимодействие и удаление как interaction/removal с generic
-            api.logInteraction(player.getName(), painting.getLocation());
+            coalescer.interaction(player.getName(), painting.getLocation());
         } else {
-            String reason = getEntityReason(e.getDamager());
-            if (reason != null) {
-                api.logInteraction("#" + e.getDamager().getName() + "-" + reason, painting.getLocation());
+            int reason = getEntityReason(e.getDamager());
+            if (reason != ReasonDictionary.NONE) {
+                coalescer.interaction(reasons.name(reasons.compose(namePrefix(e.getDamager(), true), reason)), painting.getLocation());
             } else {
-                if (section.getBoolean("disable-unknown")) {
+                if (section.disableUnknown()) {
                     e.setCancelled(true);
                     e.setDamage(0.0d);
-                    Util.broadcastNearPlayers(e.getEntity().getLocation(), section.getString("alert"));
+                    cancelledPaintingHits.increment();
+                    alert(e.getEntity().getLocation(), section.alert());
                 }
             }
         }
     }
 
-    // Entity hit by projectile
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.LOWEST)
+    // Entity hit by projectile, routed by the damage tracking dispatcher
     public void onEntityHitByProjectile(EntityDamageByEntityEvent e) {
         if (!(e.getDamager() instanceof Projectile projectile)) return;
         ProjectileSource shooter = projectile.getShooter();
         if (shooter instanceof Player player) {
-            putEntity(e.getEntity(), player.getName());
+            putEntity(e.getEntity(), actor(player));
             return;
         }
-        String reason = getEntityReason(e.getDamager());
-        if (reason != null) {
+        int reason = getEntityReason(e.getDamager());
+        if (reason != ReasonDictionary.NONE) {
             putEntity(e.getEntity(), reason);
         } else {
-            putEntity(e.getEntity(), e.getDamager().getName());
+            putEntity(e.getEntity(), actor(e.getDamager()));
         }
     }
 
-    // Block ignite
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    // Block ignite, registered in registerRoutedHandlers
     public void onBlockIgnite(BlockIgniteEvent e) {
         if (e.getIgnitingEntity() != null) {
             if (e.getIgnitingEntity().getType() == EntityType.PLAYER && e.getPlayer() != null) {
-                putLocation(e.getBlock().getLocation(), e.getPlayer().getName());
+                putBlock(e.getBlock(), actor(e.getPlayer()));
                 return;
             }
-            String sourceFromEntity = getEntityReason(e.getIgnitingEntity());
-            if (sourceFromEntity != null) {
-                putLocation(e.getBlock().getLocation(), sourceFromEntity);
+            int sourceFromEntity = getEntityReason(e.getIgnitingEntity());
+            if (sourceFromEntity != ReasonDictionary.NONE) {
+                putBlock(e.getBlock(), sourceFromEntity);
                 return;
             } else if (e.getIgnitingEntity() instanceof Projectile projectile) {
                 ProjectileSource shooter = projectile.getShooter();
                 if (shooter instanceof Player player) {
-                    putLocation(e.getBlock().getLocation(), player.getName());
+                    putBlock(e.getBlock(), actor(player));
                     return;
                 }
             }
         }
+        // Spreading fire carries its box along, any other igniting block needs its own entry
         if (e.getIgnitingBlock() != null) {
-            String sourceFromLoc = getLocationReason(e.getIgnitingBlock().getLocation());
-            if (sourceFromLoc != null) {
-                putLocation(e.getBlock().getLocation(), sourceFromLoc);
+            int sourceFromLoc = e.getCause() == BlockIgniteEvent.IgniteCause.SPREAD ? getAreaReason(e.getIgnitingBlock()) : getBlockReason(e.getIgnitingBlock());
+            if (sourceFromLoc != ReasonDictionary.NONE) {
+                extendFire(e.getBlock(), sourceFromLoc);
+                return;
+            }
+        }
+        // Fire started by an explosion, inside its crater
+        if (e.getCause() == BlockIgniteEvent.IgniteCause.EXPLOSION) {
+            int sourceFromArea = regions.get(e.getBlock().getWorld(), e.getBlock().getX(), e.getBlock().getY(), e.getBlock().getZ());
+            if (sourceFromArea != ReasonDictionary.NONE) {
+                extendFire(e.getBlock(), sourceFromArea);
                 return;
             }
         }
 
-        ConfigurationSection section = Util.bakeConfigSection(getConfig(), "fire");
-        if (!section.getBoolean("enable", true)) return;
-        if (section.getBoolean("disable-unknown", true)) e.setCancelled(true);
+        Settings.Section section = settings.fire();
+        if (section.enable() && section.disableUnknown()) {
+            e.setCancelled(true);
+            cancelledFires.increment();
+        }
     }
 
-    // Block burn
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    // Block burn, registered in registerRoutedHandlers
     public void onBlockBurn(BlockBurnEvent e) {
-        ConfigurationSection section = Util.bakeConfigSection(getConfig(), "fire");
-        if (!section.getBoolean("enable", true)) return;
+        Settings.Section section = settings.fire();
         if (e.getIgnitingBlock() != null) {
-            String source = getLocationReason(e.getIgnitingBlock().getLocation());
-            if (source != null) {
-                putLocation(e.getBlock().getLocation(), source);
-                api.logRemoval("#fire-" + source, e.getBlock().getLocation(), e.getBlock().getType(), e.getBlock().getBlockData());
-            } else if (section.getBoolean("disable-unknown", true)) {
+            int source = getAreaReason(e.getIgnitingBlock());
+            if (source != ReasonDictionary.NONE) {
+                extendFire(e.getBlock(), source);
+                if (!section.enable()) return;
+                logRemoval(reasons.name(reasons.compose("#fire-", source)), e.getBlock().getLocation(), e.getBlock().getType(), e.getBlock().getBlockData());
+            } else if (section.enable() && section.disableUnknown()) {
                 e.setCancelled(true);
-                Util.broadcastNearPlayers(e.getIgnitingBlock().getLocation(), section.getString("alert"));
+                cancelledFires.increment();
+                alert(e.getIgnitingBlock().getLocation(), section.alert());
             }
         }
     }
 
+    // TNT minecart caught in an attributed explosion, routed by the damage tracking dispatcher
+    public void onExplosiveMinecartHit(EntityDamageByEntityEvent e) {
+        int chained = chains.link(e.getEntity(), e.getDamager());
+        if (chained != ReasonDictionary.NONE) putEntity(e.getEntity(), chained);
+    }
+
     // Projectile hits bomb-like entities
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.LOWEST)
     public void onBombHit(ProjectileHitEvent e) {
         Entity hit = e.getHitEntity();
         if (hit == null) return;
         if (hit instanceof ExplosiveMinecart || e.getEntityType() == EntityType.END_CRYSTAL) {
             ProjectileSource shooter = e.getEntity().getShooter();
             if (shooter instanceof Player player) {
-                String src = getEntityReason(e.getEntity());
-                if (src != null) putEntity(hit, src);
-                else putEntity(hit, player.getName());
+                int src = getEntityReason(e.getEntity());
+                if (src != ReasonDictionary.NONE) putEntity(hit, src);
+                else putEntity(hit, actor(player));
             }
         }
     }
 
-    // Explosions
-    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    // Explosions, registered in registerRoutedHandlers
     public void onExplode(EntityExplodeEvent e) {
         Entity entity = e.getEntity();
         List<Block> blockList = e.blockList();
-        if (blockList.isEmpty()) return;
+        if (blockList.isEmpty()) {
+            if (entity instanceof EnderCrystal) forgetEntity(entity);
+            return;
+        }
 
-        ConfigurationSection section = Util.bakeConfigSection(getConfig(), "entity-explosion");
-        if (!section.getBoolean("enable", true)) return;
+        Settings.Section section = settings.entityExplosion();
 
-        String track = getEntityReason(entity);
+        int track = getEntityReason(entity);
 
         // TNT or EnderCrystal
         if (entity instanceof TNTPrimed || entity instanceof EnderCrystal) {
-            if (track != null) {
-                String reason = "#" + e.getEntityType().name().toLowerCase(Locale.ROOT) + "-" + track;
-                logRemovalForBlocks(reason, blockList);
-                entityCache.invalidate(entity);
-            } else {
-                if (!section.getBoolean("disable-unknown", true)) return;
+            if (track != ReasonDictionary.NONE) {
+                int reason = reasons.compose(TYPE_PREFIXES.get(e.getEntityType()), track);
+                logExplosion(entity, track, reason, blockList);
+                entityCache.invalidate(entity.getEntityId());
+            } else if (section.disableUnknown()) {
                 e.blockList().clear();
-                entity.remove();
-                Util.broadcastNearPlayers(entity.getLocation(), section.getString("alert"));
+                cancelledEntityExplosions.increment();
+                removeEntity(entity);
+                alertExplosion(entity.getLocation(), section.alert());
             }
+            // Left to us by onEntityRemove
+            if (entity instanceof EnderCrystal) forgetEntity(entity);
             return;
         }
 
         // Creeper
         if (entity instanceof Creeper creeper) {
-            if (track != null) {
-                for (Block b : blockList) api.logRemoval(track, b.getLocation(), b.getType(), b.getBlockData());
+            if (track != ReasonDictionary.NONE) {
+                logExplosion(entity, track, track, blockList);
             } else {
                 LivingEntity target = creeper.getTarget();
                 if (target != null) {
-                    String reason = "#creeper-" + target.getName();
-                    for (Block b : blockList) {
-                        api.logRemoval(reason, b.getLocation(), b.getType(), b.getBlockData());
-                        putBlock(b, reason);
-                    }
+                    int reason = reasons.compose("#creeper-", actor(target));
+                    logExplosion(entity, reason, reason, blockList);
                 } else {
-                    if (!section.getBoolean("disable-unknown")) return;
+                    if (!section.disableUnknown()) return;
                     e.blockList().clear();
-                    entity.remove();
-                    Util.broadcastNearPlayers(e.getLocation(), section.getString("alert"));
+                    cancelledEntityExplosions.increment();
+                    removeEntity(entity);
+                    alertExplosion(e.getLocation(), section.alert());
                 }
             }
             return;
@@ -463,54 +1276,54 @@ public class CPTNTExt extends JavaPlugin implements Listener {
 
         // Fireball
         if (entity instanceof Fireball) {
-            if (track != null) {
-                String reason = "#fireball-" + track;
-                logRemovalForBlocks(reason, blockList);
-                entityCache.invalidate(entity);
+            if (track != ReasonDictionary.NONE) {
+                int reason = reasons.compose("#fireball-", track);
+                logExplosion(entity, track, reason, blockList);
+                entityCache.invalidate(entity.getEntityId());
             } else {
-                if (section.getBoolean("disable-unknown")) {
+                if (section.disableUnknown()) {
                     e.blockList().clear();
-                    entity.remove();
-                    Util.broadcastNearPlayers(entity.getLocation(), section.getString("alert"));
+                    cancelledEntityExplosions.increment();
+                    removeEntity(entity);
+                    alertExplosion(entity.getLocation(), section.alert());
                 }
             }
             return;
         }
 
-        // ExplosiveMinecart
+        // ExplosiveMinecart, set off by a chain or a projectile first, otherwise whoever owns its rail
         if (entity instanceof ExplosiveMinecart) {
-            BlockPos corner = BlockPos.of(entity.getLocation().clone().subtract(0.5, 0, 0.5));
-            String locReason = locationCache.getIfPresent(corner);
-            if (locReason != null) {
-                String reason = "#tntminecart-" + locReason;
-                logRemovalForBlocks(reason, blockList);
-            } else if (track != null) {
-                String reason = "#tntminecart-" + track;
-                logRemovalForBlocks(reason, blockList);
-                entityCache.invalidate(entity);
-            } else if (section.getBoolean("disable-unknown")) {
+            int locReason = getCornerReason(entity);
+            if (track != ReasonDictionary.NONE) {
+                int reason = reasons.compose("#tntminecart-", track);
+                logExplosion(entity, track, reason, blockList);
+                entityCache.invalidate(entity.getEntityId());
+            } else if (locReason != ReasonDictionary.NONE) {
+                int reason = reasons.compose("#tntminecart-", locReason);
+                logExplosion(entity, locReason, reason, blockList);
+            } else if (section.disableUnknown()) {
                 e.blockList().clear();
-                Util.broadcastNearPlayers(entity.getLocation(), section.getString("alert"));
+                cancelledEntityExplosions.increment();
+                alertExplosion(entity.getLocation(), section.alert());
             }
             return;
         }
 
-        if ((track == null || track.isEmpty()) && entity instanceof Mob mob && mob.getTarget() != null) {
-            track = mob.getTarget().getName();
+        if (reasons.isBlank(track) && entity instanceof Mob mob && mob.getTarget() != null) {
+            track = actor(mob.getTarget());
         }
 
-        if ((track == null || track.isEmpty()) && entity.getLastDamageCause() instanceof EntityDamageByEntityEvent edbe) {
-            track = "#" + entity.getName() + "-" + edbe.getDamager().getName();
+        if (reasons.isBlank(track) && entity.getLastDamageCause() instanceof EntityDamageByEntityEvent edbe) {
+            track = reasons.compose(namePrefix(entity, true), actor(edbe.getDamager()));
         }
 
-        if (track != null && !track.isEmpty()) {
-            for (Block b : e.blockList()) {
-                api.logRemoval(track, b.getLocation(), b.getType(), b.getBlockData());
-            }
-        } else if (section.getBoolean("disable-unknown")) {
+        if (!reasons.isBlank(track)) {
+            logExplosion(entity, track, track, e.blockList());
+        } else if (section.disableUnknown()) {
             e.blockList().clear();
-            e.getEntity().remove();
-            Util.broadcastNearPlayers(entity.getLocation(), section.getString("alert"));
+            cancelledEntityExplosions.increment();
+            removeEntity(e.getEntity());
+            alertExplosion(entity.getLocation(), section.alert());
         }
     }
 }
@@ -0,0 +1,192 @@
+package org.makeacake;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Off-heap second tier behind {@link LocationStore} and {@link EntityStore}. Entries they evict for space are
+ * demoted here instead of being dropped and promoted back on their next lookup, so the number of tracked
+ * blocks is bounded by a byte budget outside the heap rather than by the on-heap caps.
+ *
+ * One allocation of the budget, laid out as buckets of {@value #WAYS} fixed-width records
+ * (long key, int namespace, int reason, long accessed). A full bucket replaces its least recently accessed
+ * record, so the table never grows and never needs a sweep; expired records read as missing. Namespace 0 holds
+ * entity ids, every world gets its own for packed block positions. Buckets are grouped into stripes with a
+ * lock each, demotions and lookups come from every region thread.
+ */
+public class ColdStore {
+
+    public static final int ENTITIES = 0;
+
+    private static final int RECORD_BYTES = 24;
+    private static final int WAYS = 8;
+    private static final int BUCKET_BYTES = RECORD_BYTES * WAYS;
+    private static final int STRIPES = 64;
+
+    private static final long KEY = 0;
+    private static final long NAMESPACE = 8;
+    private static final long REASON = 12;
+    private static final long ACCESSED = 16;
+
+    // Freed by the GC once the plugin lets go of the store, nothing can touch it after an explicit close
+    private final MemorySegment table;
+    private final long buckets;
+    private final Object[] locks = new Object[STRIPES];
+    private final long expireAfterAccessMillis;
+    private final Map<UUID, Integer> namespaces = new ConcurrentHashMap<>();
+    private final AtomicInteger nextNamespace = new AtomicInteger(ENTITIES + 1);
+
+    private final LongAdder size = new LongAdder();
+    private final LongAdder demoted = new LongAdder();
+    private final LongAdder promoted = new LongAdder();
+    private final LongAdder replaced = new LongAdder();
+
+    public ColdStore(long budgetBytes, long expireAfterAccess, TimeUnit unit) {
+        this.buckets = Math.max(1, budgetBytes / BUCKET_BYTES);
+        this.table = Arena.ofAuto().allocate(buckets * BUCKET_BYTES, 64);
+        this.expireAfterAccessMillis = unit.toMillis(expireAfterAccess);
+        for (int i = 0; i < STRIPES; i++) locks[i] = new Object();
+    }
+
+    public int namespace(UUID world) {
+        return namespaces.computeIfAbsent(world, uid -> nextNamespace.getAndIncrement());
+    }
+
+    // -1 for worlds that never demoted anything, their lookups skip the table
+    public int existingNamespace(UUID world) {
+        Integer namespace = namespaces.get(world);
+        return namespace == null ? -1 : namespace;
+    }
+
+    // The world's records are left to be replaced, a world loaded again under the same id starts empty
+    public void invalidateWorld(UUID world) {
+        namespaces.remove(world);
+    }
+
+    public void put(int namespace, long key, int reason, long accessed) {
+        if (reason == ReasonDictionary.NONE) return;
+        if (System.currentTimeMillis() - accessed > expireAfterAccessMillis) return;
+        long bucket = bucket(namespace, key);
+        synchronized (lock(bucket)) {
+            long match = -1, empty = -1, stalest = -1;
+            long oldest = Long.MAX_VALUE;
+            for (long record = bucket; record < bucket + BUCKET_BYTES; record += RECORD_BYTES) {
+                if (table.get(ValueLayout.JAVA_INT, record + REASON) == ReasonDictionary.NONE) {
+                    if (empty < 0) empty = record;
+                } else if (matches(record, namespace, key)) {
+                    match = record;
+                    break;
+                } else if (table.get(ValueLayout.JAVA_LONG, record + ACCESSED) < oldest) {
+                    stalest = record;
+                    oldest = table.get(ValueLayout.JAVA_LONG, record + ACCESSED);
+                }
+            }
+            long target = match >= 0 ? match : empty >= 0 ? empty : stalest;
+            if (target == empty) size.increment();
+            else if (target == stalest) replaced.increment();
+            table.set(ValueLayout.JAVA_LONG, target + KEY, key);
+            table.set(ValueLayout.JAVA_INT, target + NAMESPACE, namespace);
+            table.set(ValueLayout.JAVA_INT, target + REASON, reason);
+            table.set(ValueLayout.JAVA_LONG, target + ACCESSED, accessed);
+        }
+        demoted.increment();
+    }
+
+    // Removes and returns the entry, the caller promotes it into its hot tier
+    public int take(int namespace, long key) {
+        long bucket = bucket(namespace, key);
+        synchronized (lock(bucket)) {
+            long record = find(bucket, namespace, key);
+            if (record < 0) return ReasonDictionary.NONE;
+            int reason = table.get(ValueLayout.JAVA_INT, record + REASON);
+            long accessed = table.get(ValueLayout.JAVA_LONG, record + ACCESSED);
+            clear(record);
+            if (System.currentTimeMillis() - accessed > expireAfterAccessMillis) return ReasonDictionary.NONE;
+            promoted.increment();
+            return reason;
+        }
+    }
+
+    public void remove(int namespace, long key) {
+        long bucket = bucket(namespace, key);
+        synchronized (lock(bucket)) {
+            long record = find(bucket, namespace, key);
+            if (record >= 0) clear(record);
+        }
+    }
+
+    // Marks the reasons of unexpired records as in use, see ReasonDictionary. Scans without the stripe locks: a
+    // record changing meanwhile is being demoted or promoted, and its reason is still held by the other side.
+    public void mark(ReasonDictionary reasons) {
+        long deadline = System.currentTimeMillis() - expireAfterAccessMillis;
+        for (long record = 0; record < buckets * BUCKET_BYTES; record += RECORD_BYTES) {
+            int reason = table.get(ValueLayout.JAVA_INT, record + REASON);
+            if (reason != ReasonDictionary.NONE && table.get(ValueLayout.JAVA_LONG, record + ACCESSED) >= deadline) reasons.mark(reason);
+        }
+    }
+
+    // Occupied records, including expired ones and those of unloaded worlds until they are replaced
+    public long size() {
+        return size.sum();
+    }
+
+    public long capacity() {
+        return buckets * WAYS;
+    }
+
+    public long demotedCount() {
+        return demoted.sum();
+    }
+
+    public long promotedCount() {
+        return promoted.sum();
+    }
+
+    public long replacedCount() {
+        return replaced.sum();
+    }
+
+    /* ---------- HELPERS ---------- */
+
+    // Byte offset of the key's bucket
+    private long bucket(int namespace, long key) {
+        return Long.remainderUnsigned(hash(namespace, key), buckets) * BUCKET_BYTES;
+    }
+
+    private Object lock(long bucket) {
+        return locks[(int) (bucket / BUCKET_BYTES % STRIPES)];
+    }
+
+    private long find(long bucket, int namespace, long key) {
+        for (long record = bucket; record < bucket + BUCKET_BYTES; record += RECORD_BYTES) {
+            if (table.get(ValueLayout.JAVA_INT, record + REASON) != ReasonDictionary.NONE && matches(record, namespace, key)) return record;
+        }
+        return -1;
+    }
+
+    private boolean matches(long record, int namespace, long key) {
+        return table.get(ValueLayout.JAVA_LONG, record + KEY) == key && table.get(ValueLayout.JAVA_INT, record + NAMESPACE) == namespace;
+    }
+
+    private void clear(long record) {
+        table.set(ValueLayout.JAVA_INT, record + REASON, ReasonDictionary.NONE);
+        size.decrement();
+    }
+
+    private static long hash(int namespace, long key) {
+        long h = key ^ ((long) namespace * 0x9e3779b97f4a7c15L);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
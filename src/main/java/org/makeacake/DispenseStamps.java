@@ -0,0 +1,58 @@
+package org.makeacake;
+
+import org.bukkit.World;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands a dispenser's attribution to the TNT it primes, which has no source of its own. The server fires
+ * BlockDispenseEvent and spawns the TNT right after it on the same thread, so a stamp is one reusable slot per
+ * thread: the dispense arms it with the block the TNT appears in, the next TNT spawn on that thread takes it.
+ * One lookup per dispense (the dispenser's own attribution) and no allocation, however fast the clock runs.
+ *
+ * Only TNT needs this. Dispensed arrows and fire charges name the dispenser as their shooter (a
+ * BlockProjectileSource, see CPTNTExt.onProjectileLaunch), and fire from a dispensed flint and steel names it as
+ * the igniting block.
+ */
+public class DispenseStamps {
+
+    // The TNT spawns within the dispensing tick, an older stamp belongs to a dispense that never primed one
+    private static final long STAMP_TIMEOUT_MILLIS = 1_000;
+
+    private final ThreadLocal<Stamp> stamps = ThreadLocal.withInitial(Stamp::new);
+    private final LongAdder stamped = new LongAdder();
+
+    public void arm(World world, int x, int y, int z, int reason) {
+        Stamp stamp = stamps.get();
+        stamp.world = world.getUID();
+        stamp.x = x;
+        stamp.y = y;
+        stamp.z = z;
+        stamp.reason = reason;
+        stamp.armed = System.currentTimeMillis();
+    }
+
+    // The reason when the TNT spawned where the last dispense on this thread put it, disarms either way
+    public int take(World world, int x, int y, int z) {
+        Stamp stamp = stamps.get();
+        int reason = stamp.reason;
+        if (reason == ReasonDictionary.NONE) return ReasonDictionary.NONE;
+        stamp.reason = ReasonDictionary.NONE;
+        if (stamp.x != x || stamp.y != y || stamp.z != z || !stamp.world.equals(world.getUID())) return ReasonDictionary.NONE;
+        if (System.currentTimeMillis() - stamp.armed > STAMP_TIMEOUT_MILLIS) return ReasonDictionary.NONE;
+        stamped.increment();
+        return reason;
+    }
+
+    public long stamped() {
+        return stamped.sum();
+    }
+
+    private static final class Stamp {
+        UUID world;
+        int x, y, z;
+        int reason;
+        long armed;
+    }
+}
@@ -0,0 +1,114 @@
+package org.makeacake;
+
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.Event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * One listener per event type and priority that routes on {@link EntityType} through a precomputed table,
+ * instead of several reflective handlers each running their own instanceof chain and bailing out.
+ * Routes are keyed either on the target entity (damaged / right-clicked) or on the source (damager).
+ */
+public class EntityEventDispatcher<E extends Event> {
+
+    private static final EntityType[] TYPES = EntityType.values();
+
+    private final Class<E> eventType;
+    private final Function<E, Entity> target;
+    private final Function<E, Entity> source;
+    private final Route<E>[][] byTarget;
+    private final Route<E>[][] bySource;
+    private final List<Route<E>> routes = new ArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    public EntityEventDispatcher(Class<E> eventType, Function<E, Entity> target, Function<E, Entity> source) {
+        this.eventType = eventType;
+        this.target = target;
+        this.source = source;
+        this.byTarget = new Route[TYPES.length][];
+        this.bySource = new Route[TYPES.length][];
+    }
+
+    public EntityEventDispatcher<E> onTarget(String name, Class<? extends Entity> entityClass, Consumer<E> handler) {
+        add(byTarget, new Route<>(name, handler), entityClass);
+        return this;
+    }
+
+    public EntityEventDispatcher<E> onSource(String name, Class<? extends Entity> entityClass, Consumer<E> handler) {
+        if (source == null) throw new IllegalStateException(eventType.getSimpleName() + " has no source entity to route on");
+        add(bySource, new Route<>(name, handler), entityClass);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return routes.isEmpty();
+    }
+
+    public List<Route<E>> routes() {
+        return Collections.unmodifiableList(routes);
+    }
+
+    public Class<E> eventType() {
+        return eventType;
+    }
+
+    public void dispatch(E event) {
+        run(byTarget, target.apply(event), event);
+        if (source != null) run(bySource, source.apply(event), event);
+    }
+
+    private void run(Route<E>[][] table, Entity entity, E event) {
+        if (entity == null) return;
+        Route<E>[] matched = table[entity.getType().ordinal()];
+        if (matched == null) return;
+        for (Route<E> route : matched) {
+            route.hits.increment();
+            route.handler.accept(event);
+        }
+    }
+
+    private void add(Route<E>[][] table, Route<E> route, Class<? extends Entity> entityClass) {
+        routes.add(route);
+        for (EntityType type : TYPES) {
+            Class<? extends Entity> typeClass = type.getEntityClass();
+            if (typeClass == null || !entityClass.isAssignableFrom(typeClass)) continue;
+            Route<E>[] existing = table[type.ordinal()];
+            if (existing == null) {
+                @SuppressWarnings("unchecked")
+                Route<E>[] created = new Route[]{route};
+                table[type.ordinal()] = created;
+            } else {
+                Route<E>[] grown = Arrays.copyOf(existing, existing.length + 1);
+                grown[existing.length] = route;
+                table[type.ordinal()] = grown;
+            }
+        }
+    }
+
+    public static final class Route<E> {
+        private final String name;
+        private final Consumer<E> handler;
+        private final LongAdder hits = new LongAdder();
+
+        Route(String name, Consumer<E> handler) {
+            this.name = name;
+            this.handler = handler;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long hits() {
+            return hits.sum();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package org.makeacake;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Entity attribution table keyed by the runtime entity id, so it never holds on to CraftEntity handles.
+ * Entries are removed when the entity leaves the world; size cap and idle expiry are only a safety net.
+ * Values are {@link ReasonDictionary} ids.
+ *
+ * Entities move between regions, so this is the handoff point for attributions crossing region threads
+ * (an arrow shot in one region igniting TNT in another). The table is split into segments by entity id;
+ * lookups are optimistic and never block, writes lock only their own segment.
+ *
+ * With a {@link ColdStore} attached, entries evicted for space are demoted into it instead of being dropped and
+ * a lookup missing here promotes them back.
+ */
+public class EntityStore {
+
+    private static final int SEGMENTS = 64;
+    private static final int INITIAL_CAPACITY = 1 << 5;
+    private static final int EVICTION_SAMPLES = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final int maximumSegmentSize;
+    private final long expireAfterAccessMillis;
+    private final ColdStore cold;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public EntityStore(int maximumSize, long expireAfterAccess, TimeUnit unit) {
+        this(maximumSize, expireAfterAccess, unit, null);
+    }
+
+    public EntityStore(int maximumSize, long expireAfterAccess, TimeUnit unit, ColdStore cold) {
+        this.maximumSegmentSize = Math.max(1, maximumSize / SEGMENTS);
+        this.expireAfterAccessMillis = unit.toMillis(expireAfterAccess);
+        this.cold = cold;
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment();
+    }
+
+    public void put(int entityId, int reason) {
+        if (reason == ReasonDictionary.NONE) return;
+        int hash = hash(entityId);
+        Segment segment = segments[hash & (SEGMENTS - 1)];
+        long stamp = segment.lock.writeLock();
+        try {
+            if (segment.put(entityId, hash, reason, System.currentTimeMillis()) && segment.size > maximumSegmentSize) {
+                evictOne(segment, System.currentTimeMillis() - expireAfterAccessMillis);
+            }
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    // Expired entries read as missing and are left for cleanUp, so a lookup never has to take the lock.
+    public int get(int entityId) {
+        int hash = hash(entityId);
+        Segment segment = segments[hash & (SEGMENTS - 1)];
+        long now = System.currentTimeMillis();
+        long stamp = segment.lock.tryOptimisticRead();
+        int reason = segment.get(entityId, hash, now, expireAfterAccessMillis);
+        if (!segment.lock.validate(stamp)) {
+            stamp = segment.lock.readLock();
+            try {
+                reason = segment.get(entityId, hash, now, expireAfterAccessMillis);
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        if (reason == ReasonDictionary.NONE && cold != null) {
+            reason = cold.take(ColdStore.ENTITIES, entityId);
+            if (reason != ReasonDictionary.NONE) put(entityId, reason);
+        }
+        if (reason == ReasonDictionary.NONE) missCount.increment();
+        else hitCount.increment();
+        return reason;
+    }
+
+    // Reason if the entry was accessed since the given time, without refreshing it or promoting from the cold tier
+    public int peek(int entityId, long since) {
+        int hash = hash(entityId);
+        Segment segment = segments[hash & (SEGMENTS - 1)];
+        long stamp = segment.lock.readLock();
+        try {
+            int slot = segment.find(entityId, hash);
+            if (slot < 0 || segment.accessed[slot] < Math.max(since, System.currentTimeMillis() - expireAfterAccessMillis)) return ReasonDictionary.NONE;
+            return segment.values[slot];
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    public void invalidate(int entityId) {
+        int hash = hash(entityId);
+        Segment segment = segments[hash & (SEGMENTS - 1)];
+        long stamp = segment.lock.writeLock();
+        try {
+            int slot = segment.find(entityId, hash);
+            if (slot >= 0) segment.removeAt(slot);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+        if (cold != null) cold.remove(ColdStore.ENTITIES, entityId);
+    }
+
+    // Also marks the reasons of what stays as still in use
+    public void cleanUp(ReasonDictionary reasons) {
+        long deadline = System.currentTimeMillis() - expireAfterAccessMillis;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.writeLock();
+            try {
+                evictionCount.add(segment.removeOlderThan(deadline, reasons));
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) size += segment.size;
+        return size;
+    }
+
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+
+    // Called with the segment's write lock held
+    private void evictOne(Segment segment, long deadline) {
+        int victim = segment.victim(deadline);
+        if (victim < 0) return;
+        if (cold != null && segment.accessed[victim] >= deadline) {
+            cold.put(ColdStore.ENTITIES, segment.keys[victim], segment.values[victim], segment.accessed[victim]);
+        }
+        segment.removeAt(victim);
+        evictionCount.increment();
+    }
+
+    private static int hash(int key) {
+        key ^= key >>> 16;
+        key *= 0x85ebca6b;
+        key ^= key >>> 13;
+        return key;
+    }
+
+    // One open-addressing table. Slots are picked with the hash bits above the segment bits.
+    private static final class Segment {
+        final StampedLock lock = new StampedLock();
+        int[] keys = new int[INITIAL_CAPACITY];
+        int[] values = new int[INITIAL_CAPACITY];
+        long[] accessed = new long[INITIAL_CAPACITY];
+        int mask = INITIAL_CAPACITY - 1;
+        volatile int size;
+        int hand;
+
+        static int home(int hash, int mask) {
+            return (hash >>> 6) & mask;
+        }
+
+        // Returns true when a new entry was added.
+        boolean put(int key, int hash, int reason, long now) {
+            int slot = home(hash, mask);
+            while (values[slot] != ReasonDictionary.NONE) {
+                if (keys[slot] == key) {
+                    values[slot] = reason;
+                    accessed[slot] = now;
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = reason;
+            accessed[slot] = now;
+            size++;
+            if (size > (mask + 1) * 3 / 4) resize();
+            return true;
+        }
+
+        // Runs without the lock: reads the arrays once and bounds the probe, the caller validates the stamp.
+        // The access time is refreshed in place, losing that write to a concurrent resize only ages the entry.
+        int get(int key, int hash, long now, long expireAfterAccessMillis) {
+            int[] keys = this.keys;
+            int[] values = this.values;
+            long[] accessed = this.accessed;
+            int mask = Math.min(this.mask, Math.min(keys.length, Math.min(values.length, accessed.length)) - 1);
+            int slot = home(hash, mask);
+            for (int probes = 0; probes <= mask; probes++) {
+                int value = values[slot];
+                if (value == ReasonDictionary.NONE) return ReasonDictionary.NONE;
+                if (keys[slot] == key) {
+                    if (now - accessed[slot] > expireAfterAccessMillis) return ReasonDictionary.NONE;
+                    accessed[slot] = now;
+                    return value;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return ReasonDictionary.NONE;
+        }
+
+        int find(int key, int hash) {
+            int slot = home(hash, mask);
+            while (values[slot] != ReasonDictionary.NONE) {
+                if (keys[slot] == key) return slot;
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        void removeAt(int slot) {
+            int gap = slot;
+            int next = (gap + 1) & mask;
+            while (values[next] != ReasonDictionary.NONE) {
+                int home = home(EntityStore.hash(keys[next]), mask);
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    values[gap] = values[next];
+                    accessed[gap] = accessed[next];
+                    gap = next;
+                }
+                next = (next + 1) & mask;
+            }
+            values[gap] = ReasonDictionary.NONE;
+            size--;
+        }
+
+        int removeOlderThan(long deadline, ReasonDictionary reasons) {
+            int removed = 0;
+            int slot = 0;
+            while (slot <= mask) {
+                if (values[slot] != ReasonDictionary.NONE && accessed[slot] < deadline) {
+                    removeAt(slot);
+                    removed++;
+                    continue;
+                }
+                if (values[slot] != ReasonDictionary.NONE) reasons.mark(values[slot]);
+                slot++;
+            }
+            return removed;
+        }
+
+        int victim(long deadline) {
+            int oldest = -1;
+            int seen = 0;
+            int slot = hand;
+            for (int i = 0; i <= mask && seen < EVICTION_SAMPLES; i++) {
+                slot = (slot + 1) & mask;
+                if (values[slot] == ReasonDictionary.NONE) continue;
+                if (accessed[slot] < deadline) {
+                    oldest = slot;
+                    break;
+                }
+                if (oldest < 0 || accessed[slot] < accessed[oldest]) oldest = slot;
+                seen++;
+            }
+            hand = slot;
+            return oldest;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            long[] oldAccessed = accessed;
+            int capacity = oldKeys.length << 1;
+            int[] newKeys = new int[capacity];
+            int[] newValues = new int[capacity];
+            long[] newAccessed = new long[capacity];
+            int newMask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] == ReasonDictionary.NONE) continue;
+                int slot = home(EntityStore.hash(oldKeys[i]), newMask);
+                while (newValues[slot] != ReasonDictionary.NONE) slot = (slot + 1) & newMask;
+                newKeys[slot] = oldKeys[i];
+                newValues[slot] = oldValues[i];
+                newAccessed[slot] = oldAccessed[i];
+            }
+            keys = newKeys;
+            values = newValues;
+            accessed = newAccessed;
+            mask = newMask;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package org.makeacake;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Admission control for explosion logging under cannon load. Counts explosions per tick and per chunk and
+ * the time the explosion handlers spend per tick; once a limit of {@link Settings.ExplosionLimits} is
+ * exceeded, explosions are summarised per chunk and reason (one CoreProtect entry per flush) instead of
+ * being logged block by block, until the load has stayed under the limits for the cooldown. Within the limits,
+ * a tick past its budget still logs in full but defers all of it to later ticks (see {@link #overBudget}).
+ *
+ * Ticks are 50 ms wall-clock windows. On Folia every region ticks on its own, they share the limits here,
+ * which only makes the controller trip earlier.
+ */
+public class ExplosionAdmission {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    public enum Decision {
+        // Log block by block
+        FULL,
+        // Summarise
+        DEGRADED,
+        // Summarise, and this explosion is the one that tripped the limits
+        OVERLOADED
+    }
+
+    private final AtomicReference<Window> window = new AtomicReference<>(new Window(-1));
+    private final Map<UUID, Map<Long, ChunkRate>> chunks = new ConcurrentHashMap<>();
+    private final Map<SummaryKey, Summary> summaries = new ConcurrentHashMap<>();
+    private final AtomicLong degradedUntil = new AtomicLong();
+
+    private final AtomicLong full = new AtomicLong();
+    private final AtomicLong degraded = new AtomicLong();
+    private final AtomicLong overloads = new AtomicLong();
+    private final AtomicLong summarisedBlocks = new AtomicLong();
+
+    public Decision admit(Settings.ExplosionLimits limits, World world, int chunkX, int chunkZ) {
+        long now = System.currentTimeMillis();
+        Window current = window(System.nanoTime() / TICK_NANOS);
+        int inTick = current.explosions.incrementAndGet();
+        int inChunk = chunkRate(world.getUID(), chunkX, chunkZ).increment(now / 1000);
+        boolean over = (limits.perTick() > 0 && inTick > limits.perTick())
+                || (limits.perChunkPerSecond() > 0 && inChunk > limits.perChunkPerSecond())
+                || (limits.tickBudgetNanos() > 0 && current.nanos.get() > limits.tickBudgetNanos());
+        if (over) {
+            degraded.incrementAndGet();
+            if (degradedUntil.getAndSet(now + limits.cooldownMillis()) >= now) return Decision.DEGRADED;
+            overloads.incrementAndGet();
+            return Decision.OVERLOADED;
+        }
+        if (now < degradedUntil.get()) {
+            degraded.incrementAndGet();
+            return Decision.DEGRADED;
+        }
+        full.incrementAndGet();
+        return Decision.FULL;
+    }
+
+    // True once the explosion handlers have used up this tick's budget, work that can wait should
+    public boolean overBudget(Settings.ExplosionLimits limits) {
+        return limits.tickBudgetNanos() > 0 && window(System.nanoTime() / TICK_NANOS).nanos.get() > limits.tickBudgetNanos();
+    }
+
+    // Wraps an explosion handler so its run time counts against the tick budget
+    public <T> Consumer<T> timed(Consumer<T> handler) {
+        return event -> {
+            long started = System.nanoTime();
+            try {
+                handler.accept(event);
+            } finally {
+                long ended = System.nanoTime();
+                window(started / TICK_NANOS).nanos.addAndGet(ended - started);
+            }
+        };
+    }
+
+    // Folds a degraded explosion into its chunk's summary. The first block stands in for the crater.
+    public void summarise(int reason, List<Block> blocks) {
+        Block first = blocks.get(0);
+        SummaryKey key = new SummaryKey(first.getWorld().getUID(), LocationStore.chunkKey(first.getX() >> 4, first.getZ() >> 4), reason);
+        summaries.compute(key, (k, summary) -> {
+            if (summary == null) summary = new Summary(first, reason);
+            summary.explosions++;
+            summary.blocks += blocks.size();
+            return summary;
+        });
+        summarisedBlocks.addAndGet(blocks.size());
+    }
+
+    // Hands every summary collected so far to the consumer and forgets stale chunk rates
+    public void drain(Consumer<Summary> consumer) {
+        for (SummaryKey key : summaries.keySet()) {
+            Summary summary = summaries.remove(key);
+            if (summary != null) consumer.accept(summary);
+        }
+        long second = System.currentTimeMillis() / 1000;
+        for (Map<Long, ChunkRate> world : chunks.values()) {
+            world.values().removeIf(rate -> rate.second < second - 1);
+        }
+    }
+
+    public void invalidateWorld(UUID world) {
+        chunks.remove(world);
+        summaries.keySet().removeIf(key -> key.world.equals(world));
+    }
+
+    public boolean isDegraded() {
+        return System.currentTimeMillis() < degradedUntil.get();
+    }
+
+    public long full() {
+        return full.get();
+    }
+
+    public long degraded() {
+        return degraded.get();
+    }
+
+    public long overloads() {
+        return overloads.get();
+    }
+
+    public long summarisedBlocks() {
+        return summarisedBlocks.get();
+    }
+
+    private Window window(long tick) {
+        while (true) {
+            Window current = window.get();
+            if (current.tick >= tick) return current;
+            Window next = new Window(tick);
+            if (window.compareAndSet(current, next)) return next;
+        }
+    }
+
+    private ChunkRate chunkRate(UUID world, int chunkX, int chunkZ) {
+        return chunks.computeIfAbsent(world, uid -> new ConcurrentHashMap<>())
+                .computeIfAbsent(LocationStore.chunkKey(chunkX, chunkZ), key -> new ChunkRate());
+    }
+
+    private static final class Window {
+        final long tick;
+        final AtomicInteger explosions = new AtomicInteger();
+        final AtomicLong nanos = new AtomicLong();
+
+        Window(long tick) {
+            this.tick = tick;
+        }
+    }
+
+    private static final class ChunkRate {
+        volatile long second;
+        int count;
+
+        synchronized int increment(long now) {
+            if (now != second) {
+                second = now;
+                count = 0;
+            }
+            return ++count;
+        }
+    }
+
+    private record SummaryKey(UUID world, long chunk, int reason) {
+    }
+
+    // Captured on the thread owning the chunk, read on the flushing thread after removal from the map
+    public static final class Summary {
+        private final World world;
+        private final long position;
+        private final Material type;
+        private final BlockData data;
+        private final int reason;
+        private int explosions;
+        private int blocks;
+
+        Summary(Block first, int reason) {
+            this.world = first.getWorld();
+            this.position = LocationStore.pack(first.getX(), first.getY(), first.getZ());
+            this.type = first.getType();
+            this.data = first.getBlockData();
+            this.reason = reason;
+        }
+
+        public World world() {
+            return world;
+        }
+
+        public long position() {
+            return position;
+        }
+
+        public Material type() {
+            return type;
+        }
+
+        public BlockData data() {
+            return data;
+        }
+
+        public int reason() {
+            return reason;
+        }
+
+        public int explosions() {
+            return explosions;
+        }
+
+        public int blocks() {
+            return blocks;
+        }
+    }
+}
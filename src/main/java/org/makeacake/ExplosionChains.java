@@ -0,0 +1,202 @@
+package org.makeacake;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Entity;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Chain reactions of explosives. Every primed TNT, crystal, minecart or fireball taking part in a chain is a
+ * node pointing at the explosion that set it off, and every chain carries the single root cause its first
+ * explosion was attributed to. An explosion registers the TNT blocks it destroys as pending primes; the TNT
+ * entity spawned there picks up the chain with one lookup, instead of every destroyed block being cached
+ * so the next hop could find it at its corner.
+ *
+ * Chains cross region boundaries, so everything here is concurrent. A chain retires once it has no live
+ * node and no pending prime left.
+ */
+public class ExplosionChains {
+
+    // A TNT block destroyed by an explosion is primed within the same tick
+    private static final long PENDING_TIMEOUT_MILLIS = 5_000;
+
+    private final Map<Integer, Node> nodes = new ConcurrentHashMap<>();
+    private final Map<UUID, Map<Long, Pending>> pending = new ConcurrentHashMap<>();
+    private final Set<Chain> active = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder links = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAccumulator maxSize = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Joins an entity hit by an explosion (crystal, minecart) to the chain of the exploding entity.
+     * Returns the chain's root cause, or NONE when the damager is not part of a chain.
+     */
+    public int link(Entity child, Entity parent) {
+        Node from = nodes.get(parent.getEntityId());
+        if (from == null) return ReasonDictionary.NONE;
+        attach(child, from);
+        return from.chain.root;
+    }
+
+    /**
+     * Joins a freshly primed TNT to the chain of the explosion that destroyed its block.
+     * Returns the chain's root cause, or NONE when no explosion is pending at its position.
+     */
+    public int primed(Entity tnt) {
+        Location location = tnt.getLocation();
+        Map<Long, Pending> world = pending.get(location.getWorld().getUID());
+        if (world == null) return ReasonDictionary.NONE;
+        Pending prime = world.remove(LocationStore.pack(location.getBlockX(), location.getBlockY(), location.getBlockZ()));
+        if (prime == null) return ReasonDictionary.NONE;
+        Chain chain = prime.parent.chain;
+        if (System.currentTimeMillis() - prime.created > PENDING_TIMEOUT_MILLIS) {
+            release(chain);
+            return ReasonDictionary.NONE;
+        }
+        attach(tnt, prime.parent);
+        release(chain);
+        return chain.root;
+    }
+
+    /**
+     * Records an explosion attributed to root: the TNT among the destroyed blocks becomes pending primes of
+     * the exploding entity's node, which starts a new chain when it has none. The entity itself is done.
+     * A null entity stands for a block explosion (bed, respawn anchor).
+     */
+    public void exploded(Entity entity, int root, List<Block> blocks) {
+        if (root == ReasonDictionary.NONE) return;
+        Node node = entity == null ? null : nodes.get(entity.getEntityId());
+        boolean fresh = node == null;
+        if (fresh) node = new Node(start(root), 0);
+        Map<Long, Pending> world = null;
+        long now = System.currentTimeMillis();
+        for (Block block : blocks) {
+            if (block.getType() != Material.TNT) continue;
+            if (world == null) world = pending.computeIfAbsent(block.getWorld().getUID(), uid -> new ConcurrentHashMap<>());
+            node.chain.live.incrementAndGet();
+            Pending replaced = world.put(LocationStore.pack(block.getX(), block.getY(), block.getZ()), new Pending(node, now));
+            if (replaced != null) release(replaced.parent.chain);
+        }
+        if (fresh || nodes.remove(entity.getEntityId(), node)) {
+            release(node.chain);
+        }
+    }
+
+    // The entity left the world without exploding
+    public void removed(Entity entity) {
+        Node node = nodes.remove(entity.getEntityId());
+        if (node != null) release(node.chain);
+    }
+
+    // Drops primes that never turned into a TNT entity, marks the root causes of the chains still going as in use
+    public void cleanUp(ReasonDictionary reasons) {
+        for (Chain chain : active) reasons.mark(chain.root);
+        long deadline = System.currentTimeMillis() - PENDING_TIMEOUT_MILLIS;
+        for (Map<Long, Pending> world : pending.values()) {
+            world.entrySet().removeIf(entry -> {
+                if (entry.getValue().created >= deadline) return false;
+                release(entry.getValue().parent.chain);
+                return true;
+            });
+        }
+    }
+
+    public int activeChains() {
+        return active.size();
+    }
+
+    // Largest first
+    public List<Chain> largestChains(int limit) {
+        List<Chain> chains = new ArrayList<>(active);
+        chains.sort(Comparator.comparingInt(Chain::size).reversed());
+        return chains.size() > limit ? chains.subList(0, limit) : chains;
+    }
+
+    public long links() {
+        return links.sum();
+    }
+
+    public long completed() {
+        return completed.sum();
+    }
+
+    public long maxSize() {
+        return maxSize.get();
+    }
+
+    public long maxDepth() {
+        return maxDepth.get();
+    }
+
+    private Chain start(int root) {
+        Chain chain = new Chain(root);
+        chain.size.incrementAndGet();
+        active.add(chain);
+        return chain;
+    }
+
+    private void attach(Entity child, Node parent) {
+        Chain chain = parent.chain;
+        int depth = parent.depth + 1;
+        chain.live.incrementAndGet();
+        Node previous = nodes.put(child.getEntityId(), new Node(chain, depth));
+        if (previous != null) release(previous.chain);
+        chain.depth.accumulateAndGet(depth, Math::max);
+        maxDepth.accumulate(depth);
+        maxSize.accumulate(chain.size.incrementAndGet());
+        links.increment();
+    }
+
+    private void release(Chain chain) {
+        if (chain.live.decrementAndGet() > 0) return;
+        if (active.remove(chain)) completed.increment();
+    }
+
+    public static final class Chain {
+        private final int root;
+        private final long started = System.currentTimeMillis();
+        // Nodes plus pending primes still able to extend the chain, the root explosion holds one until it is done
+        private final AtomicInteger live = new AtomicInteger(1);
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicInteger depth = new AtomicInteger();
+
+        Chain(int root) {
+            this.root = root;
+        }
+
+        public int root() {
+            return root;
+        }
+
+        public int size() {
+            return size.get();
+        }
+
+        public int depth() {
+            return depth.get();
+        }
+
+        public long started() {
+            return started;
+        }
+    }
+
+    private record Node(Chain chain, int depth) {
+    }
+
+    private record Pending(Node parent, long created) {
+    }
+}
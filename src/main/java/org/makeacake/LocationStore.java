@@ -0,0 +1,910 @@
+package org.makeacake;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.PistonMoveReaction;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Block attribution store, partitioned per world and per chunk. Each chunk partition is a small open-addressing
+ * table with one slot per tracked block, so a chunk can be paged out on unload and back in on load.
+ * Keeps the old Guava cache semantics (global size cap, expire after access) without allocating per lookup.
+ * Values are {@link ReasonDictionary} ids.
+ *
+ * Chunks are grouped into shards of 16x16 chunks, the size of a Folia region section, so a shard is always
+ * owned by exactly one region thread. A shard's tables are only touched by that thread and need no locking;
+ * the shard index itself is read lock-free and copied on the rare insert of a new shard. Sweeps run per shard
+ * on its owner (see {@link #cleanUp(UUID, int, int, ReasonDictionary)}).
+ *
+ * The global cap is enforced through per-shard budgets, since a shard can only be evicted from by its owner:
+ * once the store is over the cap, every shard holding more than an equal share of it evicts down to that share
+ * on its next write or sweep. A busy shard can't push out the entries of quiet ones, and a write never
+ * evicts the entry it just made.
+ *
+ * With a {@link ColdStore} attached, entries evicted for space are demoted into it and a lookup missing here
+ * falls through to it, promoting what it finds back into the chunk's partition.
+ *
+ * Journal entries replayed at startup are not put on the heap right away. They wait per chunk, compactly, until
+ * the chunk is paged in, paged out or first looked up on its region, and are then merged with what the store
+ * and the chunk's page hold, the newer side winning per block. Entries of chunks that never load just expire.
+ */
+public class LocationStore {
+
+    private static final int EVICTION_SAMPLES = 8;
+    private static final byte FORMAT_VERSION = 1;
+    private static final int SHARD_SHIFT = 4;
+    // Replayed value of a block whose attribution was taken out, see replay
+    private static final int REMOVED = -1;
+
+    private final Map<UUID, ShardIndex> worlds = new ConcurrentHashMap<>();
+    private final int maximumSize;
+    private final long expireAfterAccessMillis;
+    private final LongAdder size = new LongAdder();
+    private final AtomicInteger shardCount = new AtomicInteger();
+    private final ColdStore cold;
+
+    // World -> chunk key -> journal entries not merged yet. Only the replay adds to it, before any region ticks.
+    private final Map<UUID, Map<Long, Partition>> replayed = new ConcurrentHashMap<>();
+    private final AtomicInteger replayedChunks = new AtomicInteger();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public LocationStore(int maximumSize, long expireAfterAccess, TimeUnit unit) {
+        this(maximumSize, expireAfterAccess, unit, null);
+    }
+
+    public LocationStore(int maximumSize, long expireAfterAccess, TimeUnit unit, ColdStore cold) {
+        this.maximumSize = maximumSize;
+        this.expireAfterAccessMillis = unit.toMillis(expireAfterAccess);
+        this.cold = cold;
+    }
+
+    public static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkZ << 32) | (chunkX & 0xFFFFFFFFL);
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed >> 38);
+    }
+
+    public static int unpackY(long packed) {
+        return (int) (packed << 52 >> 52);
+    }
+
+    public static int unpackZ(long packed) {
+        return (int) (packed << 26 >> 38);
+    }
+
+    // Position inside the chunk: 12 bits of y, 4 bits of z, 4 bits of x.
+    static int local(int x, int y, int z) {
+        return ((y & 0xFFF) << 8) | ((z & 15) << 4) | (x & 15);
+    }
+
+    static long shardKey(int chunkX, int chunkZ) {
+        return chunkKey(chunkX >> SHARD_SHIFT, chunkZ >> SHARD_SHIFT);
+    }
+
+    public void put(World world, int x, int y, int z, int reason) {
+        if (world == null || reason == ReasonDictionary.NONE) return;
+        long now = System.currentTimeMillis();
+        Shard shard = shardFor(world.getUID(), x >> 4, z >> 4);
+        Partition partition = shard.getOrCreate(chunkKey(x >> 4, z >> 4));
+        int local = local(x, y, z);
+        if (partition.put(local, reason, now)) {
+            added(shard, 1);
+            trim(world.getUID(), shard, now, partition, local);
+        }
+    }
+
+    // Replays an entry with its original access time, used when loading the journal before any region ticks
+    // and by the warm start on the region owning the block. Never replaces a more recent entry.
+    public void restore(UUID world, int x, int y, int z, int reason, long accessed) {
+        long now = System.currentTimeMillis();
+        if (reason == ReasonDictionary.NONE || now - accessed > expireAfterAccessMillis) return;
+        Shard shard = shardFor(world, x >> 4, z >> 4);
+        Partition partition = shard.getOrCreate(chunkKey(x >> 4, z >> 4));
+        int local = local(x, y, z);
+        int slot = partition.find(local);
+        if (slot >= 0) {
+            if (partition.accessed[slot] <= accessed) {
+                partition.values[slot] = reason;
+                partition.accessed[slot] = accessed;
+            }
+            return;
+        }
+        partition.put(local, reason, accessed);
+        added(shard, 1);
+        trim(world, shard, now, partition, local);
+    }
+
+    public int get(World world, int x, int y, int z) {
+        if (world == null) return ReasonDictionary.NONE;
+        ShardIndex index = worlds.get(world.getUID());
+        Shard shard = index == null ? null : index.get(shardKey(x >> 4, z >> 4));
+        Partition partition = shard == null ? null : shard.get(chunkKey(x >> 4, z >> 4));
+        int slot = partition == null ? -1 : partition.find(local(x, y, z));
+        if (slot < 0) {
+            // A chunk loaded before the journal was replayed catches up on its first lookup
+            if (mergeReplayed(world.getUID(), x >> 4, z >> 4)) return get(world, x, y, z);
+            return promote(world.getUID(), x, y, z);
+        }
+        long now = System.currentTimeMillis();
+        if (now - partition.accessed[slot] > expireAfterAccessMillis) {
+            partition.removeAt(slot);
+            removed(shard, 1);
+            evictionCount.increment();
+            missCount.increment();
+            return ReasonDictionary.NONE;
+        }
+        partition.accessed[slot] = now;
+        partition.lastAccess = now;
+        hitCount.increment();
+        return partition.values[slot];
+    }
+
+    /**
+     * Re-keys the attributions of blocks a piston moves by one step. All of them are taken out before any is
+     * written back, so blocks pushing each other along a row don't overwrite one another; each keeps its access
+     * time. Blocks the piston breaks instead of pushing are in the list too, their attribution is only taken out.
+     * Runs on the region owning the piston. The listener sees NONE at every position an entry was taken from,
+     * then every entry at its new position.
+     */
+    public int move(World world, List<Block> blocks, int dx, int dy, int dz, MoveListener listener) {
+        if (world == null || blocks.isEmpty()) return 0;
+        UUID uid = world.getUID();
+        if (replayedChunks.get() > 0) {
+            for (Block block : blocks) {
+                mergeReplayed(uid, block.getX() >> 4, block.getZ() >> 4);
+                mergeReplayed(uid, (block.getX() + dx) >> 4, (block.getZ() + dz) >> 4);
+            }
+        }
+        ShardIndex index = worlds.get(uid);
+        int namespace = cold == null ? -1 : cold.existingNamespace(uid);
+        if (index == null && namespace < 0) return 0;
+        long now = System.currentTimeMillis();
+        long deadline = now - expireAfterAccessMillis;
+        int[] values = new int[blocks.size()];
+        long[] accessed = new long[blocks.size()];
+        int moved = 0;
+        for (int i = 0; i < values.length; i++) {
+            Block block = blocks.get(i);
+            int x = block.getX(), y = block.getY(), z = block.getZ();
+            Shard shard = index == null ? null : index.get(shardKey(x >> 4, z >> 4));
+            Partition partition = shard == null ? null : shard.get(chunkKey(x >> 4, z >> 4));
+            int slot = partition == null ? -1 : partition.find(local(x, y, z));
+            if (slot >= 0) {
+                values[i] = partition.values[slot];
+                accessed[i] = partition.accessed[slot];
+                partition.removeAt(slot);
+                removed(shard, 1);
+                if (partition.size == 0) shard.remove(chunkKey(x >> 4, z >> 4));
+            } else if (namespace >= 0) {
+                values[i] = cold.take(namespace, pack(x, y, z));
+                accessed[i] = now;
+            }
+            if (values[i] != ReasonDictionary.NONE) listener.moved(x, y, z, ReasonDictionary.NONE);
+            if (values[i] == ReasonDictionary.NONE || accessed[i] < deadline || block.getPistonMoveReaction() == PistonMoveReaction.BREAK) {
+                values[i] = ReasonDictionary.NONE;
+                continue;
+            }
+            moved++;
+        }
+        if (moved == 0) return 0;
+        Shard last = null;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == ReasonDictionary.NONE) continue;
+            Block block = blocks.get(i);
+            int x = block.getX() + dx, y = block.getY() + dy, z = block.getZ() + dz;
+            last = shardFor(uid, x >> 4, z >> 4);
+            if (last.getOrCreate(chunkKey(x >> 4, z >> 4)).put(local(x, y, z), values[i], accessed[i])) added(last, 1);
+            listener.moved(x, y, z, values[i]);
+        }
+        trim(uid, last, now, null, 0);
+        return moved;
+    }
+
+    /**
+     * Visits the live entries accessed since the given time within the radius around the column (x, z), any
+     * height. Only the chunk partitions overlapping the square are looked up, so the cost follows the area and
+     * not the store size. Read-only: access times are not refreshed and the cold tier, which has no spatial
+     * order, is not consulted. Runs on the region owning the center, partitions of neighbouring regions are read
+     * like {@link #partitions()} does and may miss an entry being written concurrently.
+     */
+    public int inspect(World world, int x, int z, int radius, long since, InspectVisitor visitor) {
+        ShardIndex index = world == null ? null : worlds.get(world.getUID());
+        if (index == null) return 0;
+        since = Math.max(since, System.currentTimeMillis() - expireAfterAccessMillis);
+        long radiusSquared = (long) radius * radius;
+        int visited = 0;
+        for (int chunkX = (x - radius) >> 4; chunkX <= (x + radius) >> 4; chunkX++) {
+            for (int chunkZ = (z - radius) >> 4; chunkZ <= (z + radius) >> 4; chunkZ++) {
+                Shard shard = index.get(shardKey(chunkX, chunkZ));
+                Partition partition = shard == null ? null : shard.get(chunkKey(chunkX, chunkZ));
+                if (partition == null) continue;
+                // Read the arrays once, a resize by the owner swaps them underneath
+                int[] keys = partition.keys;
+                int[] values = partition.values;
+                long[] accessed = partition.accessed;
+                int length = Math.min(keys.length, Math.min(values.length, accessed.length));
+                for (int slot = 0; slot < length; slot++) {
+                    int reason = values[slot];
+                    if (reason == ReasonDictionary.NONE || accessed[slot] < since) continue;
+                    int local = keys[slot];
+                    int bx = (chunkX << 4) | (local & 15), bz = (chunkZ << 4) | ((local >> 4) & 15);
+                    long dx = bx - x, dz = bz - z;
+                    if (dx * dx + dz * dz > radiusSquared) continue;
+                    visitor.visit(bx, local << 12 >> 20, bz, reason, accessed[slot]);
+                    visited++;
+                }
+            }
+        }
+        return visited;
+    }
+
+    // Worlds only unload on Paper, where everything runs on the main thread.
+    public void invalidateWorld(UUID world) {
+        if (cold != null) cold.invalidateWorld(world);
+        Map<Long, Partition> pending = replayed.remove(world);
+        if (pending != null) replayedChunks.addAndGet(-pending.size());
+        ShardIndex index = worlds.remove(world);
+        if (index == null) return;
+        List<Shard> shards = index.shards();
+        shardCount.addAndGet(-shards.size());
+        for (Shard shard : shards) size.add(-shard.entries);
+    }
+
+    /**
+     * Removes the chunk's partition from memory and returns it with its reasons encoded, an empty
+     * array when nothing live was left in it, or null when the store holds nothing for the chunk at all
+     * (its stored data, if any, is still current and must be kept).
+     */
+    public byte[] pageOut(World world, int chunkX, int chunkZ, ReasonDictionary reasons) {
+        mergeReplayed(world.getUID(), chunkX, chunkZ);
+        ShardIndex shards = worlds.get(world.getUID());
+        Shard shard = shards == null ? null : shards.get(shardKey(chunkX, chunkZ));
+        if (shard == null) return null;
+        Partition partition = shard.remove(chunkKey(chunkX, chunkZ));
+        if (partition == null) return null;
+        removed(shard, partition.size);
+
+        long deadline = System.currentTimeMillis() - expireAfterAccessMillis;
+        Map<Integer, Integer> nameIndex = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int live = 0;
+        for (int i = 0; i < partition.keys.length; i++) {
+            if (partition.values[i] == ReasonDictionary.NONE || partition.accessed[i] < deadline) continue;
+            String name = reasons.encode(partition.values[i]);
+            if (name == null) continue;
+            nameIndex.computeIfAbsent(partition.values[i], id -> {
+                names.add(name);
+                return names.size() - 1;
+            });
+            live++;
+        }
+        if (live == 0) return new byte[0];
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + live * 16);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(names.size());
+            for (String name : names) out.writeUTF(name);
+            out.writeInt(live);
+            for (int i = 0; i < partition.keys.length; i++) {
+                Integer index = nameIndex.get(partition.values[i]);
+                if (index == null || partition.values[i] == ReasonDictionary.NONE || partition.accessed[i] < deadline) continue;
+                out.writeInt(partition.keys[i]);
+                out.writeInt(index);
+                out.writeLong(partition.accessed[i]);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to encode chunk attributions", ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Merges a paged out chunk back in, entries written while the chunk was unloaded win. Then the chunk's
+    // replayed journal entries, see replay. Call it on every chunk load, with or without a page.
+    public void pageIn(World world, int chunkX, int chunkZ, byte[] data, ReasonDictionary reasons) throws IOException {
+        if (world == null) return;
+        try {
+            if (data != null && data.length > 0) readPage(world.getUID(), chunkX, chunkZ, data, reasons);
+        } finally {
+            mergeReplayed(world.getUID(), chunkX, chunkZ);
+        }
+    }
+
+    /**
+     * Holds a journal entry back until its chunk is on a region thread, see the class comment. A reason of NONE
+     * records that the block's attribution was taken out at that time. Per block the newest record wins, whatever
+     * the order records come in. Only before regions tick, the replay is the sole writer.
+     */
+    public void replay(UUID world, int x, int y, int z, int reason, long time) {
+        if (System.currentTimeMillis() - time > expireAfterAccessMillis) return;
+        Map<Long, Partition> chunks = replayed.computeIfAbsent(world, uid -> new ConcurrentHashMap<>());
+        Partition chunk = chunks.get(chunkKey(x >> 4, z >> 4));
+        if (chunk == null) {
+            chunk = new Partition();
+            chunks.put(chunkKey(x >> 4, z >> 4), chunk);
+            replayedChunks.incrementAndGet();
+        }
+        int local = local(x, y, z);
+        int value = reason == ReasonDictionary.NONE ? REMOVED : reason;
+        int slot = chunk.find(local);
+        if (slot < 0) {
+            chunk.put(local, value, time);
+        } else if (chunk.accessed[slot] <= time) {
+            chunk.values[slot] = value;
+            chunk.accessed[slot] = time;
+            chunk.lastAccess = time;
+        }
+    }
+
+    public int replayedChunks() {
+        return replayedChunks.get();
+    }
+
+    // Drops replayed entries past the expiry, any thread. The reasons of what stays are marked as still in use.
+    public void cleanUpReplayed(ReasonDictionary reasons) {
+        if (replayedChunks.get() == 0) return;
+        long deadline = System.currentTimeMillis() - expireAfterAccessMillis;
+        for (Map<Long, Partition> chunks : replayed.values()) {
+            for (Map.Entry<Long, Partition> chunk : chunks.entrySet()) {
+                Partition entries = chunk.getValue();
+                // Merged concurrently, the region thread took it out first
+                if (entries.lastAccess < deadline && chunks.remove(chunk.getKey(), entries)) {
+                    replayedChunks.decrementAndGet();
+                    continue;
+                }
+                for (int i = 0; i <= entries.mask; i++) {
+                    if (entries.values[i] != ReasonDictionary.NONE && entries.accessed[i] >= deadline) reasons.mark(entries.values[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits one chunk of every shard holding data. Sweeping the shard with {@link #cleanUp(UUID, int, int, ReasonDictionary)}
+     * has to happen on the thread owning that chunk.
+     */
+    public void forEachShard(ShardVisitor visitor) {
+        for (Map.Entry<UUID, ShardIndex> world : worlds.entrySet()) {
+            for (Shard shard : world.getValue().shards()) {
+                long chunk = shard.anyChunk();
+                if (chunk != Long.MIN_VALUE) visitor.visit(world.getKey(), (int) chunk, (int) (chunk >> 32));
+            }
+        }
+    }
+
+    // Drops everything idle for longer than the expiry from the shard holding the chunk, the Guava cache did this lazily on writes.
+    // The reasons of what stays are marked as still in use.
+    public void cleanUp(UUID world, int chunkX, int chunkZ, ReasonDictionary reasons) {
+        ShardIndex index = worlds.get(world);
+        long key = shardKey(chunkX, chunkZ);
+        Shard shard = index == null ? null : index.get(key);
+        if (shard == null) return;
+        long deadline = System.currentTimeMillis() - expireAfterAccessMillis;
+        for (int i = 0; i < shard.parts.length; i++) {
+            Partition partition = shard.parts[i];
+            if (partition == null) continue;
+            int removed = partition.removeOlderThan(deadline, reasons);
+            removed(shard, removed);
+            evictionCount.add(removed);
+            if (partition.size == 0 && shard.removeAt(i)) i--;
+        }
+        // Shards that went quiet while over their share give it back here
+        trim(world, shard, System.currentTimeMillis(), null, 0);
+        if (shard.count == 0 && index.remove(key)) shardCount.decrementAndGet();
+    }
+
+    public int size() {
+        return (int) size.sum();
+    }
+
+    // Approximate while regions are ticking, shard tables are read without their owner's cooperation.
+    public int partitions() {
+        int partitions = 0;
+        for (ShardIndex index : worlds.values()) {
+            for (Shard shard : index.shards()) partitions += shard.count;
+        }
+        return partitions;
+    }
+
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+
+    private Shard shardFor(UUID world, int chunkX, int chunkZ) {
+        ShardIndex index = worlds.get(world);
+        if (index == null) index = worlds.computeIfAbsent(world, uid -> new ShardIndex(shardCount));
+        return index.getOrCreate(shardKey(chunkX, chunkZ));
+    }
+
+    private void readPage(UUID world, int chunkX, int chunkZ, byte[] data, ReasonDictionary reasons) throws IOException {
+        long deadline = System.currentTimeMillis() - expireAfterAccessMillis;
+        Shard shard = shardFor(world, chunkX, chunkZ);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION) throw new IOException("Unknown chunk attribution format " + version);
+            int[] ids = new int[in.readInt()];
+            for (int i = 0; i < ids.length; i++) ids[i] = reasons.decode(in.readUTF());
+            int entries = in.readInt();
+            Partition partition = shard.getOrCreate(chunkKey(chunkX, chunkZ));
+            for (int i = 0; i < entries; i++) {
+                int local = in.readInt();
+                int reason = ids[in.readInt()];
+                long accessed = in.readLong();
+                if (accessed < deadline || partition.find(local) >= 0) continue;
+                partition.put(local, reason, accessed);
+                added(shard, 1);
+            }
+            if (partition.size == 0) shard.remove(chunkKey(chunkX, chunkZ));
+        }
+        trim(world, shard, System.currentTimeMillis(), null, 0);
+    }
+
+    // Folds the chunk's replayed journal entries in, on the thread owning it. Per block the newer side wins, a
+    // removal takes out what was attributed before it. False if nothing was waiting for the chunk.
+    private boolean mergeReplayed(UUID world, int chunkX, int chunkZ) {
+        if (replayedChunks.get() == 0) return false;
+        Map<Long, Partition> chunks = replayed.get(world);
+        Partition entries = chunks == null ? null : chunks.remove(chunkKey(chunkX, chunkZ));
+        if (entries == null) return false;
+        replayedChunks.decrementAndGet();
+        long now = System.currentTimeMillis();
+        long deadline = now - expireAfterAccessMillis;
+        Shard shard = shardFor(world, chunkX, chunkZ);
+        Partition partition = shard.getOrCreate(chunkKey(chunkX, chunkZ));
+        for (int i = 0; i <= entries.mask; i++) {
+            int value = entries.values[i];
+            long time = entries.accessed[i];
+            if (value == ReasonDictionary.NONE || time < deadline) continue;
+            int slot = partition.find(entries.keys[i]);
+            if (slot >= 0 && partition.accessed[slot] > time) continue;
+            if (value == REMOVED) {
+                if (slot < 0) continue;
+                partition.removeAt(slot);
+                removed(shard, 1);
+            } else if (slot >= 0) {
+                partition.values[slot] = value;
+                partition.accessed[slot] = time;
+            } else {
+                partition.put(entries.keys[i], value, time);
+                added(shard, 1);
+            }
+        }
+        if (partition.size == 0) shard.remove(chunkKey(chunkX, chunkZ));
+        trim(world, shard, now, null, 0);
+        return true;
+    }
+
+    // Looked up in the cold tier on a miss and moved back into the chunk's partition, which the caller owns.
+    private int promote(UUID world, int x, int y, int z) {
+        int namespace = cold == null ? -1 : cold.existingNamespace(world);
+        int reason = namespace < 0 ? ReasonDictionary.NONE : cold.take(namespace, pack(x, y, z));
+        if (reason == ReasonDictionary.NONE) {
+            missCount.increment();
+            return ReasonDictionary.NONE;
+        }
+        hitCount.increment();
+        long now = System.currentTimeMillis();
+        Shard shard = shardFor(world, x >> 4, z >> 4);
+        Partition partition = shard.getOrCreate(chunkKey(x >> 4, z >> 4));
+        int local = local(x, y, z);
+        partition.put(local, reason, now);
+        added(shard, 1);
+        trim(world, shard, now, partition, local);
+        return reason;
+    }
+
+    private void added(Shard shard, int entries) {
+        shard.entries += entries;
+        size.add(entries);
+    }
+
+    private void removed(Shard shard, int entries) {
+        shard.entries -= entries;
+        size.add(-entries);
+    }
+
+    // Entries a shard may keep while the store is over its cap
+    private int shardBudget() {
+        return Math.max(1, maximumSize / Math.max(1, shardCount.get()));
+    }
+
+    // Evicts from the shard until the store is back under the cap or the shard within its budget, sparing
+    // the entry just written (keep, keepKey)
+    private void trim(UUID world, Shard shard, long now, Partition keep, int keepKey) {
+        if (shard == null) return;
+        while (size.sum() > maximumSize && shard.entries > shardBudget()) {
+            if (!evictOne(world, shard, now, keep, keepKey)) return;
+        }
+    }
+
+    // Picks the stalest of a few sampled chunk partitions of the shard and drops its least recently accessed
+    // entry, demoting it to the cold tier unless it has expired.
+    private boolean evictOne(UUID world, Shard shard, long now, Partition keep, int keepKey) {
+        // A partition holding nothing but the kept entry has no victim to offer
+        int slot = shard.sampleStalest(EVICTION_SAMPLES, keep != null && keep.size == 1 ? keep : null);
+        if (slot < 0) return false;
+        Partition partition = shard.parts[slot];
+        int victim = partition.oldest(now - expireAfterAccessMillis, partition == keep ? keepKey : -1);
+        if (victim < 0) return false;
+        if (cold != null) {
+            long chunk = shard.chunkKeys[slot];
+            int local = partition.keys[victim];
+            int x = ((int) chunk << 4) | (local & 15), y = local << 12 >> 20, z = ((int) (chunk >> 32) << 4) | ((local >> 4) & 15);
+            cold.put(cold.namespace(world), pack(x, y, z), partition.values[victim], partition.accessed[victim]);
+        }
+        partition.removeAt(victim);
+        removed(shard, 1);
+        evictionCount.increment();
+        if (partition.size == 0) shard.removeAt(slot);
+        return true;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private static int hash(int key) {
+        key ^= key >>> 16;
+        key *= 0x85ebca6b;
+        key ^= key >>> 13;
+        return key;
+    }
+
+    @FunctionalInterface
+    public interface MoveListener {
+        void moved(int x, int y, int z, int reason);
+    }
+
+    @FunctionalInterface
+    public interface InspectVisitor {
+        void visit(int x, int y, int z, int reason, long accessed);
+    }
+
+    @FunctionalInterface
+    public interface ShardVisitor {
+        void visit(UUID world, int chunkX, int chunkZ);
+    }
+
+    // Shard key -> shard of one world. Readers never lock, the rare insert or removal copies the table.
+    static final class ShardIndex {
+        private final AtomicInteger created;
+        private volatile Table table = new Table(16);
+
+        ShardIndex(AtomicInteger created) {
+            this.created = created;
+        }
+
+        Shard get(long key) {
+            return table.get(key);
+        }
+
+        Shard getOrCreate(long key) {
+            Shard shard = table.get(key);
+            if (shard != null) return shard;
+            synchronized (this) {
+                Table current = table;
+                shard = current.get(key);
+                if (shard != null) return shard;
+                shard = new Shard();
+                table = current.with(key, shard);
+                created.incrementAndGet();
+                return shard;
+            }
+        }
+
+        // Returns true when the shard was present
+        synchronized boolean remove(long key) {
+            Table current = table;
+            table = current.without(key);
+            return table != current;
+        }
+
+        List<Shard> shards() {
+            Table current = table;
+            List<Shard> shards = new ArrayList<>(current.count);
+            for (Shard shard : current.shards) {
+                if (shard != null) shards.add(shard);
+            }
+            return shards;
+        }
+
+        private static final class Table {
+            final long[] keys;
+            final Shard[] shards;
+            final int mask;
+            final int count;
+
+            Table(int capacity) {
+                this(new long[capacity], new Shard[capacity], 0);
+            }
+
+            private Table(long[] keys, Shard[] shards, int count) {
+                this.keys = keys;
+                this.shards = shards;
+                this.mask = keys.length - 1;
+                this.count = count;
+            }
+
+            Shard get(long key) {
+                int slot = hash(key) & mask;
+                while (shards[slot] != null) {
+                    if (keys[slot] == key) return shards[slot];
+                    slot = (slot + 1) & mask;
+                }
+                return null;
+            }
+
+            Table with(long key, Shard shard) {
+                int capacity = count + 1 > keys.length / 2 ? keys.length << 1 : keys.length;
+                Table copy = new Table(new long[capacity], new Shard[capacity], count + 1);
+                for (int i = 0; i < keys.length; i++) {
+                    if (shards[i] != null) copy.insert(keys[i], shards[i]);
+                }
+                copy.insert(key, shard);
+                return copy;
+            }
+
+            Table without(long key) {
+                if (get(key) == null) return this;
+                Table copy = new Table(new long[keys.length], new Shard[keys.length], count - 1);
+                for (int i = 0; i < keys.length; i++) {
+                    if (shards[i] != null && keys[i] != key) copy.insert(keys[i], shards[i]);
+                }
+                return copy;
+            }
+
+            private void insert(long key, Shard shard) {
+                int slot = hash(key) & mask;
+                while (shards[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = key;
+                shards[slot] = shard;
+            }
+        }
+    }
+
+    // Chunk key -> partition of one shard, open addressing. Owned by the region thread ticking the shard.
+    static final class Shard {
+        private static final int INITIAL_CAPACITY = 16;
+
+        long[] chunkKeys = new long[INITIAL_CAPACITY];
+        Partition[] parts = new Partition[INITIAL_CAPACITY];
+        int mask = INITIAL_CAPACITY - 1;
+        int count;
+        // Tracked blocks across the shard's partitions
+        int entries;
+        private int hand;
+
+        Partition get(long chunkKey) {
+            int slot = hash(chunkKey) & mask;
+            while (parts[slot] != null) {
+                if (chunkKeys[slot] == chunkKey) return parts[slot];
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        Partition getOrCreate(long chunkKey) {
+            int slot = hash(chunkKey) & mask;
+            while (parts[slot] != null) {
+                if (chunkKeys[slot] == chunkKey) return parts[slot];
+                slot = (slot + 1) & mask;
+            }
+            Partition partition = new Partition();
+            chunkKeys[slot] = chunkKey;
+            parts[slot] = partition;
+            if (++count > (mask + 1) * 3 / 4) resize();
+            return partition;
+        }
+
+        Partition remove(long chunkKey) {
+            int slot = hash(chunkKey) & mask;
+            while (parts[slot] != null) {
+                if (chunkKeys[slot] == chunkKey) {
+                    Partition partition = parts[slot];
+                    removeAt(slot);
+                    return partition;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        // Returns true when a later entry was shifted into the freed slot.
+        boolean removeAt(int slot) {
+            int gap = slot;
+            int next = (gap + 1) & mask;
+            boolean shiftedIntoSlot = false;
+            while (parts[next] != null) {
+                int home = hash(chunkKeys[next]) & mask;
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    chunkKeys[gap] = chunkKeys[next];
+                    parts[gap] = parts[next];
+                    if (gap == slot) shiftedIntoSlot = true;
+                    gap = next;
+                }
+                next = (next + 1) & mask;
+            }
+            parts[gap] = null;
+            count--;
+            return shiftedIntoSlot;
+        }
+
+        long anyChunk() {
+            Partition[] parts = this.parts;
+            long[] chunkKeys = this.chunkKeys;
+            for (int i = 0; i < parts.length && i < chunkKeys.length; i++) {
+                if (parts[i] != null) return chunkKeys[i];
+            }
+            return Long.MIN_VALUE;
+        }
+
+        int sampleStalest(int samples, Partition skip) {
+            if (count == 0) return -1;
+            int stalest = -1;
+            int seen = 0;
+            int slot = hand;
+            for (int i = 0; i <= mask && seen < samples; i++) {
+                slot = (slot + 1) & mask;
+                if (parts[slot] == null || parts[slot] == skip) continue;
+                if (stalest < 0 || parts[slot].lastAccess < parts[stalest].lastAccess) stalest = slot;
+                seen++;
+            }
+            hand = slot;
+            return stalest;
+        }
+
+        private void resize() {
+            long[] oldKeys = chunkKeys;
+            Partition[] oldParts = parts;
+            int capacity = oldKeys.length << 1;
+            chunkKeys = new long[capacity];
+            parts = new Partition[capacity];
+            mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldParts[i] == null) continue;
+                int slot = hash(oldKeys[i]) & mask;
+                while (parts[slot] != null) slot = (slot + 1) & mask;
+                chunkKeys[slot] = oldKeys[i];
+                parts[slot] = oldParts[i];
+            }
+        }
+    }
+
+    // Tracked blocks of one chunk, keyed by their local position.
+    static final class Partition {
+        private static final int INITIAL_CAPACITY = 16;
+
+        int[] keys = new int[INITIAL_CAPACITY];
+        int[] values = new int[INITIAL_CAPACITY];
+        long[] accessed = new long[INITIAL_CAPACITY];
+        int mask = INITIAL_CAPACITY - 1;
+        int size;
+        long lastAccess;
+
+        int find(int key) {
+            int slot = hash(key) & mask;
+            while (values[slot] != ReasonDictionary.NONE) {
+                if (keys[slot] == key) return slot;
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        // Returns true when a new entry was inserted, false when an existing one was overwritten.
+        boolean put(int key, int value, long now) {
+            if (now > lastAccess) lastAccess = now;
+            int slot = hash(key) & mask;
+            while (values[slot] != ReasonDictionary.NONE) {
+                if (keys[slot] == key) {
+                    values[slot] = value;
+                    accessed[slot] = now;
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            accessed[slot] = now;
+            if (++size > (mask + 1) * 3 / 4) resize();
+            return true;
+        }
+
+        // Backward-shift deletion keeps probe chains intact without tombstones.
+        void removeAt(int slot) {
+            int gap = slot;
+            int next = (gap + 1) & mask;
+            while (values[next] != ReasonDictionary.NONE) {
+                int home = hash(keys[next]) & mask;
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    values[gap] = values[next];
+                    accessed[gap] = accessed[next];
+                    gap = next;
+                }
+                next = (next + 1) & mask;
+            }
+            values[gap] = ReasonDictionary.NONE;
+            size--;
+        }
+
+        int removeOlderThan(long deadline, ReasonDictionary reasons) {
+            int removed = 0;
+            int slot = 0;
+            while (slot <= mask) {
+                if (values[slot] != ReasonDictionary.NONE && accessed[slot] < deadline) {
+                    removeAt(slot);
+                    removed++;
+                    // removeAt may have shifted a live entry into this slot, check it again.
+                    continue;
+                }
+                if (values[slot] != ReasonDictionary.NONE) reasons.mark(values[slot]);
+                slot++;
+            }
+            return removed;
+        }
+
+        // Never the entry under skipKey, -1 skips nothing
+        int oldest(long deadline, int skipKey) {
+            int oldest = -1;
+            for (int slot = 0; slot <= mask; slot++) {
+                if (values[slot] == ReasonDictionary.NONE || keys[slot] == skipKey) continue;
+                if (accessed[slot] < deadline) return slot;
+                if (oldest < 0 || accessed[slot] < accessed[oldest]) oldest = slot;
+            }
+            return oldest;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            long[] oldAccessed = accessed;
+            int capacity = oldKeys.length << 1;
+            keys = new int[capacity];
+            values = new int[capacity];
+            accessed = new long[capacity];
+            mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] == ReasonDictionary.NONE) continue;
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != ReasonDictionary.NONE) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                accessed[slot] = oldAccessed[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.makeacake;
+
+import net.coreprotect.CoreProtectAPI;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-coalescing in front of CoreProtect for interactions and item frame rotations, which players and
+ * autoclickers repeat many times a second on the same frame. Repeats of the same (user, block, action) within
+ * the window collapse into one logged event carrying the final state; the scheduled {@link #flush} writes
+ * whatever has been waiting for a full window.
+ *
+ * Handlers on any region thread may record. CoreProtect reads the block state when it logs, so the periodic flush
+ * hands each write to the region owning its block; only the shutdown flush writes in place.
+ */
+public class LogCoalescer {
+
+    public enum Action {
+        INTERACTION(1),
+        // Logged as a removal plus a placement of the framed item
+        ROTATE(2);
+
+        private final int rows;
+
+        Action(int rows) {
+            this.rows = rows;
+        }
+    }
+
+    private final Plugin plugin;
+    private final CoreProtectAPI api;
+    private final long windowMillis;
+    private final Map<Key, Pending> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder logged = new LongAdder();
+    private final LongAdder saved = new LongAdder();
+
+    // A window of 0 writes every event straight through
+    public LogCoalescer(Plugin plugin, CoreProtectAPI api, long windowMillis) {
+        this.plugin = plugin;
+        this.api = api;
+        this.windowMillis = windowMillis;
+    }
+
+    public void interaction(String user, Location location) {
+        record(user, location, Action.INTERACTION, null);
+    }
+
+    public void rotate(String user, Location location, Material item) {
+        record(user, location, Action.ROTATE, item);
+    }
+
+    // Writes events that have waited a full window, or all of them on shutdown
+    public void flush(boolean all) {
+        if (pending.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Key, Pending> entry : pending.entrySet()) {
+            Pending event = entry.getValue();
+            if (!all && now - event.first < windowMillis) continue;
+            // Removal under the map's lock, a repeat racing with it starts a new event instead of getting lost
+            if (!pending.remove(entry.getKey(), event)) continue;
+            if (all) {
+                write(entry.getKey(), event);
+                continue;
+            }
+            Key key = entry.getKey();
+            Bukkit.getRegionScheduler().execute(plugin, event.world, LocationStore.unpackX(key.position) >> 4,
+                    LocationStore.unpackZ(key.position) >> 4, () -> write(key, event));
+        }
+    }
+
+    public int pending() {
+        return pending.size();
+    }
+
+    public long recorded() {
+        return recorded.sum();
+    }
+
+    public long logged() {
+        return logged.sum();
+    }
+
+    public long saved() {
+        return saved.sum();
+    }
+
+    private void record(String user, Location location, Action action, Material item) {
+        recorded.increment();
+        World world = location.getWorld();
+        Key key = new Key(user, world.getUID(), LocationStore.pack(location.getBlockX(), location.getBlockY(), location.getBlockZ()), action);
+        if (windowMillis == 0) {
+            write(key, new Pending(world, item));
+            return;
+        }
+        pending.compute(key, (k, event) -> {
+            if (event == null) return new Pending(world, item);
+            event.repeats++;
+            event.item = item;
+            return event;
+        });
+    }
+
+    private void write(Key key, Pending event) {
+        Location location = new Location(event.world, LocationStore.unpackX(key.position), LocationStore.unpackY(key.position), LocationStore.unpackZ(key.position));
+        switch (key.action) {
+            case INTERACTION -> api.logInteraction(key.user, location);
+            case ROTATE -> {
+                api.logRemoval(key.user, location, event.item, null);
+                api.logPlacement(key.user, location, event.item, null);
+            }
+        }
+        logged.add(key.action.rows);
+        saved.add((long) event.repeats * key.action.rows);
+    }
+
+    private record Key(String user, UUID world, long position, Action action) {
+    }
+
+    private static final class Pending {
+        final World world;
+        final long first = System.currentTimeMillis();
+        Material item;
+        int repeats;
+
+        Pending(World world, Material item) {
+            this.world = world;
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.makeacake;
+
+import net.coreprotect.CoreProtectAPI;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.plugin.Plugin;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Spreads per-block CoreProtect removal logging of big craters over ticks. CoreProtect reads the block's state
+ * inside logRemoval, so every call runs on the region thread owning the crater: the event handler captures the
+ * exploded blocks (type and state) into a batch and logs the first chunk right away, the rest follows one chunk
+ * per tick on the region scheduler with the captured type and state.
+ *
+ * Nothing is dropped. Past the pending cap, a crater is logged in full by its handler instead of being deferred,
+ * which pushes back on the explosions producing them. Shutdown logs whatever is still pending.
+ */
+public class LogPipeline {
+
+    private final Plugin plugin;
+    private final CoreProtectAPI api;
+    private final int maxPending;
+    private final int chunkSize;
+    private final Logger logger;
+    private final Set<Batch> pending = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder logged = new LongAdder();
+    private final LongAdder inline = new LongAdder();
+
+    public LogPipeline(Plugin plugin, CoreProtectAPI api, int maxPending, int chunkSize, Logger logger) {
+        this.plugin = plugin;
+        this.api = api;
+        this.maxPending = maxPending;
+        this.chunkSize = chunkSize;
+        this.logger = logger;
+    }
+
+    // Called on the thread owning the blocks, before the explosion removes them
+    public void submitRemovals(String user, List<Block> blocks) {
+        submitRemovals(user, blocks, false);
+    }
+
+    // Deferred batches start on the next tick, for a handler already over its tick budget
+    public void submitRemovals(String user, List<Block> blocks, boolean defer) {
+        if (user == null || blocks.isEmpty()) return;
+        Batch batch = new Batch(user, blocks.get(0).getWorld(), blocks.size());
+        for (Block block : blocks) batch.add(block);
+        submitted.increment();
+        if (pending.size() >= maxPending) {
+            inline.increment();
+            log(batch, batch.size);
+            return;
+        }
+        if (!defer) {
+            drain(batch);
+            return;
+        }
+        pending.add(batch);
+        schedule(batch);
+    }
+
+    // A single removal captured earlier, e.g. the stand-in entry of a summarised chunk. Any thread, the call
+    // to CoreProtect runs on the region owning the block.
+    public void submitRemoval(String user, World world, long position, Material type, BlockData data) {
+        submitRemoval(user, world, position, type, data, false);
+    }
+
+    // Held removals wait for shutdown instead of a region task, a disabled plugin may not schedule any
+    public void submitRemoval(String user, World world, long position, Material type, BlockData data, boolean held) {
+        if (user == null) return;
+        Batch batch = new Batch(user, world, 1);
+        batch.add(position, type, data);
+        submitted.increment();
+        pending.add(batch);
+        if (!held) schedule(batch);
+    }
+
+    // Logs everything still pending. On Paper this runs on the main thread, on Folia on the shutdown thread,
+    // which owns every region once they have stopped ticking.
+    public void shutdown() {
+        for (Batch batch : pending) {
+            log(batch, batch.size);
+            pending.remove(batch);
+        }
+    }
+
+    public int queued() {
+        return pending.size();
+    }
+
+    public long submitted() {
+        return submitted.sum();
+    }
+
+    public long logged() {
+        return logged.sum();
+    }
+
+    public long loggedInline() {
+        return inline.sum();
+    }
+
+    /* ---------- HELPERS ---------- */
+
+    // One chunk now, the rest on the next ticks of the same region
+    private void drain(Batch batch) {
+        log(batch, chunkSize);
+        if (batch.done()) {
+            pending.remove(batch);
+            return;
+        }
+        pending.add(batch);
+        schedule(batch);
+    }
+
+    private void schedule(Batch batch) {
+        long first = batch.positions[0];
+        Bukkit.getRegionScheduler().run(plugin, batch.world, LocationStore.unpackX(first) >> 4, LocationStore.unpackZ(first) >> 4,
+                task -> drain(batch));
+    }
+
+    // Synchronized on the batch so the shutdown drain and a last scheduled run never log a block twice
+    private void log(Batch batch, int limit) {
+        synchronized (batch) {
+            int to = batch.next + Math.min(limit, batch.size - batch.next);
+            for (int i = batch.next; i < to; i++) {
+                long packed = batch.positions[i];
+                Location location = new Location(batch.world, LocationStore.unpackX(packed), LocationStore.unpackY(packed), LocationStore.unpackZ(packed));
+                try {
+                    api.logRemoval(batch.user, location, batch.types[i], batch.data[i]);
+                } catch (RuntimeException ex) {
+                    logger.log(Level.WARNING, "Failed to log a block removal at " + location, ex);
+                }
+            }
+            logged.add(to - batch.next);
+            batch.next = to;
+        }
+    }
+
+    // Snapshot of an exploded block list: packed positions plus the removed type and state.
+    private static final class Batch {
+        final String user;
+        final World world;
+        final long[] positions;
+        final Material[] types;
+        final BlockData[] data;
+        int size;
+        int next;
+
+        Batch(String user, World world, int capacity) {
+            this.user = user;
+            this.world = world;
+            this.positions = new long[capacity];
+            this.types = new Material[capacity];
+            this.data = new BlockData[capacity];
+        }
+
+        void add(Block block) {
+            add(LocationStore.pack(block.getX(), block.getY(), block.getZ()), block.getType(), block.getBlockData());
+        }
+
+        void add(long position, Material type, BlockData blockData) {
+            positions[size] = position;
+            types[size] = type;
+            data[size] = blockData;
+            size++;
+        }
+
+        synchronized boolean done() {
+            return next >= size;
+        }
+    }
+}
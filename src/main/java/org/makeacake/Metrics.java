@@ -0,0 +1,135 @@
+package org.makeacake;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Always-on instrumentation: per-handler latency histograms with power-of-two nanosecond buckets, counters and
+ * gauges. Handlers keep direct references to their timer/counter so the hot path is two nanoTime calls and a
+ * couple of atomic increments. Rendered for {@code /cptntext stats} and as Prometheus text.
+ */
+public class Metrics {
+
+    private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    // Monotonic counts already kept by the stores and the pipeline, read on render
+    private final Map<String, LongSupplier> derived = new ConcurrentSkipListMap<>();
+
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, n -> new Timer());
+    }
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public void counter(String name, LongSupplier value) {
+        derived.put(name, value);
+    }
+
+    public Map<String, Timer> timers() {
+        return timers;
+    }
+
+    public Map<String, LongSupplier> gauges() {
+        return gauges;
+    }
+
+    public Map<String, Long> counterValues() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) values.put(entry.getKey(), entry.getValue().sum());
+        for (Map.Entry<String, LongSupplier> entry : derived.entrySet()) values.put(entry.getKey(), entry.getValue().getAsLong());
+        return values;
+    }
+
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# TYPE cptntext_handler_latency_seconds histogram\n");
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            Timer timer = entry.getValue();
+            String label = "handler=\"" + entry.getKey() + "\"";
+            long cumulative = 0;
+            for (int bucket = 0; bucket < Timer.BUCKETS; bucket++) {
+                long count = timer.buckets.get(bucket);
+                if (count == 0 && bucket < Timer.BUCKETS - 1) continue;
+                cumulative += count;
+                out.append("cptntext_handler_latency_seconds_bucket{").append(label)
+                        .append(",le=\"").append(bucket == Timer.BUCKETS - 1 ? "+Inf" : seconds(Timer.upperBound(bucket)))
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+            out.append("cptntext_handler_latency_seconds_sum{").append(label).append("} ").append(seconds(timer.sum.sum())).append('\n');
+            out.append("cptntext_handler_latency_seconds_count{").append(label).append("} ").append(timer.count()).append('\n');
+        }
+        for (Map.Entry<String, Long> entry : counterValues().entrySet()) {
+            out.append("# TYPE cptntext_").append(entry.getKey()).append("_total counter\n");
+            out.append("cptntext_").append(entry.getKey()).append("_total ").append(entry.getValue()).append('\n');
+        }
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            out.append("# TYPE cptntext_").append(entry.getKey()).append(" gauge\n");
+            out.append("cptntext_").append(entry.getKey()).append(' ').append(entry.getValue().getAsLong()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    public static final class Timer {
+        // Bucket i counts samples below 2^i ns, the last one is unbounded.
+        static final int BUCKETS = 40;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        public void record(long nanos) {
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+            buckets.incrementAndGet(bucket);
+            sum.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        public long count() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) count += buckets.get(i);
+            return count;
+        }
+
+        public long totalNanos() {
+            return sum.sum();
+        }
+
+        public long maxNanos() {
+            return max.get();
+        }
+
+        // Upper bound of the bucket holding the given quantile, good to a factor of two.
+        public long percentileNanos(double quantile) {
+            long count = count();
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return Math.min(upperBound(i), maxNanos());
+            }
+            return maxNanos();
+        }
+
+        static long upperBound(int bucket) {
+            return 1L << bucket;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package org.makeacake;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interns attribution reasons as compact int ids. A reason is either a plain actor ("Steve") or a
+ * (prefix, reason) pair ("#bed-" + Steve) so composed reasons share their parts instead of copying strings.
+ * The full string is only built when something is actually logged. Id 0 means "no reason".
+ *
+ * Shared by every region thread: lookups of known reasons never lock, only the first sighting of a reason
+ * allocates its id under the dictionary's monitor. Ids are published after their entry is written.
+ *
+ * Ids follow the stores' expiry. Handing an id out stamps it with the dictionary's clock, and the stores
+ * {@link #mark(int)} the ids they still hold while sweeping. {@link #cleanUp()} takes ids stamped before the
+ * expiry out of the lookups, along with the prefixes only they used. They stay parked until the next clean-up.
+ * An id that was used meanwhile comes back, the rest are reused. The parts of a composed reason live as long as
+ * the reason. Anything persisting reasons across paging writes them with {@link #encode(int)}, which keeps the
+ * composed structure, instead of the flat name.
+ */
+public class ReasonDictionary {
+
+    public static final int NONE = 0;
+
+    // Separates the prefixes and the actor in encoded reasons, player and entity names never contain it
+    private static final char SEPARATOR = '\0';
+
+    private final Map<String, Integer> actors = new ConcurrentHashMap<>();
+    private final Map<String, Integer> prefixIds = new ConcurrentHashMap<>();
+    private final long expireAfterAccessMillis;
+
+    // Composite (prefix id, inner reason id) -> reason id, open addressing on the packed pair. Replaced on growth.
+    private volatile Composites composites = new Composites(256);
+    private int compositeCount;
+    private int nextPrefix = 1;
+
+    // Indexed by reason id, replaced on growth. Names are materialized lazily, racing writers store equal strings.
+    private volatile Entries entries = new Entries(256);
+    private volatile int next = 1;
+
+    // Coarse time ids are stamped with, advanced by cleanUp
+    private volatile long clock = System.currentTimeMillis();
+    // Bumped whenever ids become reusable, so holders of "already seen" marks can start over
+    private volatile int generation;
+    // Caller of cleanUp holds the monitor for these
+    private int[] parked = new int[0];
+    private long parkedAt;
+    private int[] free = new int[16];
+    private int freeCount;
+
+    private final LongAdder evicted = new LongAdder();
+
+    public ReasonDictionary() {
+        this(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    public ReasonDictionary(long expireAfterAccess, TimeUnit unit) {
+        this.expireAfterAccessMillis = unit.toMillis(expireAfterAccess);
+    }
+
+    public int actor(String name) {
+        if (name == null) return NONE;
+        Integer id = actors.get(name);
+        if (id != null) {
+            mark(id);
+            return id;
+        }
+        synchronized (this) {
+            id = actors.get(name);
+            if (id != null) return id;
+            int created = allocate(null, NONE, name);
+            actors.put(name, created);
+            return created;
+        }
+    }
+
+    public int compose(String prefix, int reason) {
+        if (reason == NONE) return NONE;
+        Integer prefixId = prefixIds.get(prefix);
+        if (prefixId != null) {
+            int found = composites.find(key(prefixId, reason));
+            if (found != NONE) {
+                mark(found);
+                return found;
+            }
+        }
+        synchronized (this) {
+            prefixId = prefixIds.get(prefix);
+            if (prefixId == null) {
+                prefixId = nextPrefix++;
+                prefixIds.put(prefix, prefixId);
+            }
+            long key = key(prefixId, reason);
+            int found = composites.find(key);
+            if (found != NONE) return found;
+            int created = allocate(prefix, reason, null);
+            if (++compositeCount > composites.capacity() * 3 / 4) composites = composites.grow();
+            composites.insert(key, created);
+            return created;
+        }
+    }
+
+    public String name(int id) {
+        if (id <= NONE || id >= next) return null;
+        Entries current = entries;
+        String name = current.names[id];
+        if (name == null) {
+            if (current.prefixes[id] == null) return null;
+            name = current.prefixes[id] + name(current.inners[id]);
+            current.names[id] = name;
+        }
+        return name;
+    }
+
+    public boolean isBlank(int id) {
+        String name = name(id);
+        return name == null || name.isEmpty();
+    }
+
+    /**
+     * The reason with its structure, prefixes outermost first and the actor last. A plain actor encodes to its
+     * name, so flat names written before the structure was kept decode as actors, as they always did.
+     */
+    public String encode(int id) {
+        if (id <= NONE || id >= next) return null;
+        Entries current = entries;
+        if (current.prefixes[id] == null) return current.names[id];
+        StringBuilder encoded = new StringBuilder();
+        while (current.prefixes[id] != null) {
+            encoded.append(current.prefixes[id]).append(SEPARATOR);
+            id = current.inners[id];
+        }
+        return encoded.append(current.names[id]).toString();
+    }
+
+    public int decode(String encoded) {
+        if (encoded == null) return NONE;
+        int end = encoded.lastIndexOf(SEPARATOR);
+        if (end < 0) return actor(encoded);
+        int reason = actor(encoded.substring(end + 1));
+        while (end >= 0) {
+            int start = encoded.lastIndexOf(SEPARATOR, end - 1);
+            reason = compose(encoded.substring(start + 1, end), reason);
+            end = start;
+        }
+        return reason;
+    }
+
+    // Keeps the id from expiring, any thread. A racing stamp may be lost, the next mark or sweep restores it.
+    public void mark(int id) {
+        Entries current = entries;
+        if (id <= NONE || id >= current.used.length) return;
+        long now = clock;
+        if (current.used[id] != now) current.used[id] = now;
+    }
+
+    /**
+     * Parks the ids that went unused for the expiry and frees those parked by the previous call that stayed
+     * unused. Call it periodically, well within the expiry and no more often than the stores sweep.
+     */
+    public synchronized void cleanUp() {
+        long now = System.currentTimeMillis();
+        clock = now;
+        long deadline = now - expireAfterAccessMillis;
+        Entries current = entries;
+        int end = next;
+        boolean[] isParked = new boolean[end];
+        for (int id : parked) isParked[id] = true;
+
+        // Parked ids used since they were parked come back with their parts, the rest become free
+        boolean[] revived = new boolean[end];
+        for (int id : parked) {
+            if (current.used[id] >= parkedAt) keepWithParts(current, revived, id);
+        }
+        int freed = 0;
+        for (int id : parked) {
+            if (revived[id]) {
+                restore(current, id);
+                continue;
+            }
+            release(current, id);
+            freed++;
+        }
+        if (freed > 0) generation++;
+
+        // Live entries keep their parts, everything else still allocated is parked
+        boolean[] live = new boolean[end];
+        for (int id = 1; id < end; id++) {
+            if (!isAllocated(current, id)) continue;
+            if (revived[id] || !isParked[id] && current.used[id] >= deadline) keepWithParts(current, live, id);
+        }
+        List<Integer> parking = new ArrayList<>();
+        for (int id = 1; id < end; id++) {
+            if (!live[id] && isAllocated(current, id)) parking.add(id);
+        }
+        parked = new int[parking.size()];
+        for (int i = 0; i < parked.length; i++) {
+            int id = parking.get(i);
+            parked[i] = id;
+            if (current.prefixes[id] == null) actors.remove(current.names[id], id);
+        }
+        parkedAt = now;
+        if (!parking.isEmpty()) rebuildComposites(current, end, live);
+        evicted.add(freed);
+    }
+
+    // Changes whenever ids were freed for reuse, a reason id seen before a change may name something else after it
+    public int generation() {
+        return generation;
+    }
+
+    public int size() {
+        return next - 1 - freeCount;
+    }
+
+    public long evictionCount() {
+        return evicted.sum();
+    }
+
+    /* ---------- HELPERS ---------- */
+
+    // Caller holds the monitor. The new id only becomes visible to readers through the volatile write of next,
+    // a reused one through the lookup it is inserted into.
+    private int allocate(String prefix, int inner, String name) {
+        int id = freeCount > 0 ? free[--freeCount] : next;
+        Entries current = entries;
+        if (id >= current.prefixes.length) {
+            current = current.grow();
+            entries = current;
+        }
+        current.prefixes[id] = prefix;
+        current.inners[id] = inner;
+        current.names[id] = name;
+        current.used[id] = clock;
+        if (id == next) next = id + 1;
+        return id;
+    }
+
+    private static boolean isAllocated(Entries current, int id) {
+        return current.prefixes[id] != null || current.names[id] != null;
+    }
+
+    private static void keepWithParts(Entries current, boolean[] keep, int id) {
+        while (id != NONE && !keep[id]) {
+            keep[id] = true;
+            id = current.prefixes[id] == null ? NONE : current.inners[id];
+        }
+    }
+
+    // Back into its lookup unless the same reason was interned again while it was parked
+    private void restore(Entries current, int id) {
+        if (current.prefixes[id] == null) {
+            actors.putIfAbsent(current.names[id], id);
+            return;
+        }
+        Integer prefixId = prefixIds.get(current.prefixes[id]);
+        if (prefixId == null) {
+            prefixId = nextPrefix++;
+            prefixIds.put(current.prefixes[id], prefixId);
+        }
+        long key = key(prefixId, current.inners[id]);
+        if (composites.find(key) != NONE) return;
+        if (++compositeCount > composites.capacity() * 3 / 4) composites = composites.grow();
+        composites.insert(key, id);
+    }
+
+    private void release(Entries current, int id) {
+        current.prefixes[id] = null;
+        current.inners[id] = NONE;
+        current.names[id] = null;
+        if (freeCount == free.length) free = Arrays.copyOf(free, freeCount << 1);
+        free[freeCount++] = id;
+    }
+
+    // Drops parked composites from the lookup and the prefixes no allocated composite uses anymore
+    private void rebuildComposites(Entries current, int end, boolean[] live) {
+        Composites old = composites;
+        Composites rebuilt = new Composites(old.capacity());
+        int count = 0;
+        Set<String> usedPrefixes = new HashSet<>();
+        for (int id = 1; id < end; id++) {
+            if (current.prefixes[id] != null) usedPrefixes.add(current.prefixes[id]);
+        }
+        for (int slot = 0; slot < old.capacity(); slot++) {
+            int id = old.ids.get(slot);
+            if (id == NONE || !live[id]) continue;
+            rebuilt.insert(old.keys[slot], id);
+            count++;
+        }
+        prefixIds.keySet().retainAll(usedPrefixes);
+        compositeCount = count;
+        composites = rebuilt;
+    }
+
+    private static long key(int prefixId, int reason) {
+        return ((long) prefixId << 32) | (reason & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private static final class Entries {
+        final String[] prefixes;
+        final int[] inners;
+        final String[] names;
+        final long[] used;
+
+        Entries(int capacity) {
+            prefixes = new String[capacity];
+            inners = new int[capacity];
+            names = new String[capacity];
+            used = new long[capacity];
+        }
+
+        Entries grow() {
+            Entries grown = new Entries(prefixes.length << 1);
+            System.arraycopy(prefixes, 0, grown.prefixes, 0, prefixes.length);
+            System.arraycopy(inners, 0, grown.inners, 0, inners.length);
+            System.arraycopy(names, 0, grown.names, 0, names.length);
+            System.arraycopy(used, 0, grown.used, 0, used.length);
+            return grown;
+        }
+    }
+
+    // Keys are written before their id, ids are read with acquire semantics, so a visible id has a visible key.
+    private static final class Composites {
+        final long[] keys;
+        final AtomicIntegerArray ids;
+        final int mask;
+
+        Composites(int capacity) {
+            keys = new long[capacity];
+            ids = new AtomicIntegerArray(capacity);
+            mask = capacity - 1;
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        int find(long key) {
+            int slot = hash(key) & mask;
+            int id;
+            while ((id = ids.get(slot)) != NONE) {
+                if (keys[slot] == key) return id;
+                slot = (slot + 1) & mask;
+            }
+            return NONE;
+        }
+
+        void insert(long key, int id) {
+            int slot = hash(key) & mask;
+            while (ids.get(slot) != NONE) slot = (slot + 1) & mask;
+            keys[slot] = key;
+            ids.set(slot, id);
+        }
+
+        Composites grow() {
+            Composites grown = new Composites(capacity() << 1);
+            for (int i = 0; i <= mask; i++) {
+                int id = ids.get(i);
+                if (id != NONE) grown.insert(keys[i], id);
+            }
+            return grown;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package org.makeacake;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Attributed areas: one box per explosion crater or fire, instead of one store entry per destroyed or burned
+ * block. Boxes are bucketed into 64x64 block columns, a point query only scans the boxes of its column.
+ * A fire grows its box as it spreads, so memory is bounded by the number of incidents, not their size.
+ * Same expiry as the block store, plus a cap on the number of boxes that drops the oldest first.
+ *
+ * Incidents can straddle region threads on Folia: columns are copy-on-write and boxes only ever grow, so
+ * queries never lock.
+ */
+public class RegionIndex {
+
+    private static final int CELL_SHIFT = 6;
+    // A fire keeps growing the same box while it spreads within this distance and time, up to MAX_SPAN per axis
+    private static final int MERGE_DISTANCE = 4;
+    private static final int MAX_SPAN = 256;
+    private static final long MERGE_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Map<UUID, Map<Long, Cell>> worlds = new ConcurrentHashMap<>();
+    private final Queue<Region> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maximumSize;
+    private final long expireAfterAccessMillis;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    public RegionIndex(int maximumSize, long expireAfterAccess, TimeUnit unit) {
+        this.maximumSize = maximumSize;
+        this.expireAfterAccessMillis = unit.toMillis(expireAfterAccess);
+    }
+
+    // Bounding box of an explosion's destroyed blocks
+    public void add(List<Block> blocks, int reason) {
+        if (reason == ReasonDictionary.NONE || blocks.isEmpty()) return;
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (Block block : blocks) {
+            minX = Math.min(minX, block.getX());
+            minY = Math.min(minY, block.getY());
+            minZ = Math.min(minZ, block.getZ());
+            maxX = Math.max(maxX, block.getX());
+            maxY = Math.max(maxY, block.getY());
+            maxZ = Math.max(maxZ, block.getZ());
+        }
+        insert(new Region(blocks.get(0).getWorld().getUID(), reason, minX, minY, minZ, maxX, maxY, maxZ));
+    }
+
+    // Grows the nearby box of the same fire to cover the block, or starts a new one
+    public void extend(World world, int x, int y, int z, int reason) {
+        if (world == null || reason == ReasonDictionary.NONE) return;
+        UUID uid = world.getUID();
+        Cell cell = cells(uid).get(cellKey(x >> CELL_SHIFT, z >> CELL_SHIFT));
+        long now = System.currentTimeMillis();
+        if (cell != null) {
+            for (Region region : cell.regions) {
+                if (region.reason != reason || region.removed || now - region.lastAccess > MERGE_WINDOW_MILLIS) continue;
+                if (region.distance(x, y, z) > MERGE_DISTANCE || !region.canGrowTo(x, y, z)) continue;
+                if (!grow(region, x, y, z)) continue;
+                region.lastAccess = now;
+                return;
+            }
+        }
+        insert(new Region(uid, reason, x, y, z, x, y, z));
+    }
+
+    // Reason of the most recently used box covering the block, NONE when there is none
+    public int get(World world, int x, int y, int z) {
+        if (world == null) return ReasonDictionary.NONE;
+        Map<Long, Cell> cells = worlds.get(world.getUID());
+        Cell cell = cells == null ? null : cells.get(cellKey(x >> CELL_SHIFT, z >> CELL_SHIFT));
+        Region best = null;
+        if (cell != null) {
+            long deadline = System.currentTimeMillis() - expireAfterAccessMillis;
+            for (Region region : cell.regions) {
+                if (region.removed || region.lastAccess < deadline || !region.contains(x, y, z)) continue;
+                if (best == null || region.lastAccess > best.lastAccess) best = region;
+            }
+        }
+        if (best == null) {
+            missCount.increment();
+            return ReasonDictionary.NONE;
+        }
+        best.lastAccess = System.currentTimeMillis();
+        hitCount.increment();
+        return best.reason;
+    }
+
+    // Boxes used since the given time that reach into the radius around the column (x, z), each visited once
+    public int inspect(World world, int x, int z, int radius, long since, RegionVisitor visitor) {
+        Map<Long, Cell> cells = world == null ? null : worlds.get(world.getUID());
+        if (cells == null) return 0;
+        since = Math.max(since, System.currentTimeMillis() - expireAfterAccessMillis);
+        Set<Region> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        int visited = 0;
+        for (int cx = (x - radius) >> CELL_SHIFT; cx <= (x + radius) >> CELL_SHIFT; cx++) {
+            for (int cz = (z - radius) >> CELL_SHIFT; cz <= (z + radius) >> CELL_SHIFT; cz++) {
+                Cell cell = cells.get(cellKey(cx, cz));
+                if (cell == null) continue;
+                for (Region region : cell.regions) {
+                    if (region.removed || region.lastAccess < since || !seen.add(region)) continue;
+                    long dx = Math.max(0, Math.max(region.minX - x, x - region.maxX));
+                    long dz = Math.max(0, Math.max(region.minZ - z, z - region.maxZ));
+                    if (dx * dx + dz * dz > (long) radius * radius) continue;
+                    visitor.visit(region.reason, region.minX, region.minY, region.minZ, region.maxX, region.maxY, region.maxZ, region.lastAccess);
+                    visited++;
+                }
+            }
+        }
+        return visited;
+    }
+
+    public void invalidateWorld(UUID world) {
+        worlds.remove(world);
+        for (Region region : order) {
+            if (region.world.equals(world)) region.removed = true;
+        }
+    }
+
+    // Also marks the reasons of the regions that stay as still in use
+    public void cleanUp(ReasonDictionary reasons) {
+        long deadline = System.currentTimeMillis() - expireAfterAccessMillis;
+        Iterator<Region> it = order.iterator();
+        while (it.hasNext()) {
+            Region region = it.next();
+            if (!region.removed && region.lastAccess >= deadline) {
+                reasons.mark(region.reason);
+                continue;
+            }
+            it.remove();
+            remove(region);
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    private void insert(Region region) {
+        for (int cx = region.minX >> CELL_SHIFT; cx <= region.maxX >> CELL_SHIFT; cx++) {
+            for (int cz = region.minZ >> CELL_SHIFT; cz <= region.maxZ >> CELL_SHIFT; cz++) {
+                addToCell(region, cx, cz);
+            }
+        }
+        order.add(region);
+        if (size.incrementAndGet() <= maximumSize) return;
+        Region oldest = order.poll();
+        if (oldest != null) remove(oldest);
+    }
+
+    // Returns false when the box was dropped in the meantime.
+    private boolean grow(Region region, int x, int y, int z) {
+        synchronized (region) {
+            if (region.retired) return false;
+            int oldMinCX = region.minX >> CELL_SHIFT, oldMaxCX = region.maxX >> CELL_SHIFT;
+            int oldMinCZ = region.minZ >> CELL_SHIFT, oldMaxCZ = region.maxZ >> CELL_SHIFT;
+            // Columns first, then bounds: a query that sees the new bounds finds the box in every column it covers
+            int minCX = Math.min(oldMinCX, x >> CELL_SHIFT), maxCX = Math.max(oldMaxCX, x >> CELL_SHIFT);
+            int minCZ = Math.min(oldMinCZ, z >> CELL_SHIFT), maxCZ = Math.max(oldMaxCZ, z >> CELL_SHIFT);
+            for (int cx = minCX; cx <= maxCX; cx++) {
+                for (int cz = minCZ; cz <= maxCZ; cz++) {
+                    if (cx < oldMinCX || cx > oldMaxCX || cz < oldMinCZ || cz > oldMaxCZ) addToCell(region, cx, cz);
+                }
+            }
+            region.minX = Math.min(region.minX, x);
+            region.minY = Math.min(region.minY, y);
+            region.minZ = Math.min(region.minZ, z);
+            region.maxX = Math.max(region.maxX, x);
+            region.maxY = Math.max(region.maxY, y);
+            region.maxZ = Math.max(region.maxZ, z);
+            return true;
+        }
+    }
+
+    // Eviction and cleanUp can race for the same box, only the first one retires it
+    private void remove(Region region) {
+        synchronized (region) {
+            if (region.retired) return;
+            region.retired = true;
+            region.removed = true;
+            size.decrementAndGet();
+            Map<Long, Cell> cells = worlds.get(region.world);
+            if (cells == null) return;
+            for (int cx = region.minX >> CELL_SHIFT; cx <= region.maxX >> CELL_SHIFT; cx++) {
+                for (int cz = region.minZ >> CELL_SHIFT; cz <= region.maxZ >> CELL_SHIFT; cz++) {
+                    long key = cellKey(cx, cz);
+                    Cell cell = cells.get(key);
+                    if (cell != null && cell.remove(region)) cells.remove(key, cell);
+                }
+            }
+        }
+    }
+
+    private void addToCell(Region region, int cellX, int cellZ) {
+        Map<Long, Cell> cells = cells(region.world);
+        long key = cellKey(cellX, cellZ);
+        // A cell emptied concurrently is dead, retry on its replacement
+        while (!cells.computeIfAbsent(key, k -> new Cell()).add(region)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private Map<Long, Cell> cells(UUID world) {
+        Map<Long, Cell> cells = worlds.get(world);
+        return cells != null ? cells : worlds.computeIfAbsent(world, uid -> new ConcurrentHashMap<>());
+    }
+
+    private static long cellKey(int cellX, int cellZ) {
+        return ((long) cellZ << 32) | (cellX & 0xFFFFFFFFL);
+    }
+
+    // Boxes overlapping one column, replaced wholesale on change so readers can iterate without locking.
+    private static final class Cell {
+        private static final Region[] EMPTY = new Region[0];
+
+        volatile Region[] regions = EMPTY;
+        private boolean dead;
+
+        synchronized boolean add(Region region) {
+            if (dead) return false;
+            for (Region existing : regions) {
+                if (existing == region) return true;
+            }
+            Region[] grown = Arrays.copyOf(regions, regions.length + 1);
+            grown[regions.length] = region;
+            regions = grown;
+            return true;
+        }
+
+        // Returns true when the cell is now empty and has to be dropped.
+        synchronized boolean remove(Region region) {
+            Region[] current = regions;
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == region) index = i;
+            }
+            if (index < 0) return false;
+            Region[] shrunk = new Region[current.length - 1];
+            System.arraycopy(current, 0, shrunk, 0, index);
+            System.arraycopy(current, index + 1, shrunk, index, current.length - index - 1);
+            regions = shrunk;
+            dead = shrunk.length == 0;
+            return dead;
+        }
+    }
+
+    @FunctionalInterface
+    public interface RegionVisitor {
+        void visit(int reason, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, long lastAccess);
+    }
+
+    private static final class Region {
+        final UUID world;
+        final int reason;
+        volatile int minX, minY, minZ, maxX, maxY, maxZ;
+        volatile long lastAccess = System.currentTimeMillis();
+        volatile boolean removed;
+        boolean retired;
+
+        Region(UUID world, int reason, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            this.world = world;
+            this.reason = reason;
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.maxZ = maxZ;
+        }
+
+        boolean contains(int x, int y, int z) {
+            return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+        }
+
+        // Chebyshev distance from the box, 0 inside it
+        int distance(int x, int y, int z) {
+            int dx = Math.max(0, Math.max(minX - x, x - maxX));
+            int dy = Math.max(0, Math.max(minY - y, y - maxY));
+            int dz = Math.max(0, Math.max(minZ - z, z - maxZ));
+            return Math.max(dx, Math.max(dy, dz));
+        }
+
+        boolean canGrowTo(int x, int y, int z) {
+            return Math.max(maxX, x) - Math.min(minX, x) < MAX_SPAN
+                    && Math.max(maxY, y) - Math.min(minY, y) < MAX_SPAN
+                    && Math.max(maxZ, z) - Math.min(minZ, z) < MAX_SPAN;
+        }
+    }
+}
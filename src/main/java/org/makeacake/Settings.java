@@ -0,0 +1,69 @@
+package org.makeacake;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.bukkit.configuration.Configuration;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable snapshot of the configuration, compiled once on enable and on {@code /cptntext reload}
+ * so handlers never touch the string-keyed config on the hot path.
+ */
+public record Settings(Section blockExplosion, Section entityExplosion, Section fire, Section itemFrame,
+                       Section hanging, Section painting, boolean persistEntities, ExplosionLimits explosionLimits,
+                       Alerts alerts) {
+
+    public static Settings compile(Configuration configuration) {
+        return new Settings(
+                Section.compile(configuration, "block-explosion"),
+                Section.compile(configuration, "entity-explosion"),
+                Section.compile(configuration, "fire"),
+                Section.compile(configuration, "itemframe"),
+                Section.compile(configuration, "hanging"),
+                Section.compile(configuration, "painting"),
+                configuration.getBoolean("entity-tracking.persist", true),
+                ExplosionLimits.compile(configuration),
+                Alerts.compile(configuration));
+    }
+
+    // Alert is pre-rendered from its '&' colour codes, null when there is nothing to send.
+    public record Section(boolean enable, boolean disableUnknown, Component alert) {
+        static Section compile(Configuration configuration, String path) {
+            ConfigurationSection section = Util.bakeConfigSection(configuration, path);
+            String alert = section.getString("alert");
+            return new Section(
+                    section.getBoolean("enable", true),
+                    section.getBoolean("disable-unknown", true),
+                    render(alert));
+        }
+    }
+
+    // Zero disables a limit. Budget is in nanoseconds, cooldown in milliseconds.
+    public record ExplosionLimits(int perTick, int perChunkPerSecond, long tickBudgetNanos, long cooldownMillis, Component alert) {
+        static ExplosionLimits compile(Configuration configuration) {
+            String alert = configuration.getString("explosion-limits.alert");
+            return new ExplosionLimits(
+                    Math.max(0, configuration.getInt("explosion-limits.per-tick", 64)),
+                    Math.max(0, configuration.getInt("explosion-limits.per-chunk-per-second", 40)),
+                    TimeUnit.MICROSECONDS.toNanos(Math.max(0, (long) (configuration.getDouble("explosion-limits.tick-budget-millis", 5) * 1000))),
+                    TimeUnit.SECONDS.toMillis(Math.max(0, configuration.getLong("explosion-limits.cooldown-seconds", 5))),
+                    render(alert));
+        }
+    }
+
+    // Player limit counts alerts per player every 10 seconds, 0 disables it
+    public record Alerts(double radius, long dedupMillis, int playerLimit) {
+        static Alerts compile(Configuration configuration) {
+            return new Alerts(
+                    Math.max(0, configuration.getDouble("alerts.radius", 15)),
+                    TimeUnit.SECONDS.toMillis(Math.max(0, configuration.getLong("alerts.dedup-seconds", 5))),
+                    Math.max(0, configuration.getInt("alerts.player-limit", 6)));
+        }
+    }
+
+    private static Component render(String alert) {
+        return alert == null || alert.isEmpty() ? null : LegacyComponentSerializer.legacyAmpersand().deserialize(alert);
+    }
+}
@@ -0,0 +1,398 @@
+package org.makeacake;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Directional;
+import org.bukkit.block.data.type.Bed;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.ItemFrame;
+import org.bukkit.entity.Mob;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Projectile;
+import org.bukkit.entity.TNTPrimed;
+import org.bukkit.projectiles.BlockProjectileSource;
+import org.bukkit.projectiles.ProjectileSource;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Records the events the plugin attributes into a compact binary trace, so incidents and cannon tests can be
+ * replayed headless against the handlers (see TraceReplay in the jmh source set). Captured at HIGHEST, before
+ * the plugin's MONITOR handlers run; every attributed explosion also gets an OUTCOME record naming the user it
+ * was logged under, which the replay scores its own attributions against.
+ *
+ * Format: int magic, int version, then records of (byte type, int millis since start, fields). Strings are
+ * interned inline: a known one is its int id, a new one is -1 followed by its UTF form, ids count up from 0.
+ * Entities are (int id, string type, string name, location), locations (string world, double x, y, z),
+ * blocks (string world, int x, y, z). Recording stops on its own once the file reaches the size cap.
+ */
+public class TraceRecorder {
+
+    public static final int MAGIC = 0x43505452;
+    public static final int VERSION = 3;
+
+    public static final byte INTERACT_BLOCK = 1;
+    public static final byte BLOCK_PLACE = 2;
+    public static final byte BLOCK_BREAK = 3;
+    public static final byte PROJECTILE_LAUNCH = 4;
+    public static final byte TNT_SPAWN = 5;
+    public static final byte PROJECTILE_HIT = 6;
+    public static final byte ENTITY_REMOVE = 7;
+    public static final byte DAMAGE = 8;
+    public static final byte INTERACT_ENTITY = 9;
+    public static final byte BLOCK_EXPLODE = 10;
+    public static final byte ENTITY_EXPLODE = 11;
+    public static final byte BLOCK_IGNITE = 12;
+    public static final byte BLOCK_BURN = 13;
+    public static final byte HANGING_BREAK = 14;
+    public static final byte OUTCOME = 15;
+    public static final byte PISTON = 16;
+    public static final byte DISPENSE = 17;
+
+    // Projectile shooters
+    public static final byte SHOOTER_NONE = 0;
+    public static final byte SHOOTER_ENTITY = 1;
+    public static final byte SHOOTER_BLOCK = 2;
+
+    private final Path file;
+    private final DataOutputStream out;
+    private final long maxBytes;
+    private final Logger logger;
+    private final long started = System.currentTimeMillis();
+    private final Map<String, Integer> strings = new HashMap<>();
+    private long records;
+    private boolean closed;
+
+    private TraceRecorder(Path file, DataOutputStream out, long maxBytes, Logger logger) {
+        this.file = file;
+        this.out = out;
+        this.maxBytes = maxBytes;
+        this.logger = logger;
+    }
+
+    public static TraceRecorder open(Path file, long maxBytes, Logger logger) throws IOException {
+        Files.createDirectories(file.getParent());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        return new TraceRecorder(file, out, maxBytes, logger);
+    }
+
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException ex) {
+            logger.warning("Failed to close trace " + file + ": " + ex.getMessage());
+        }
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public synchronized long records() {
+        return records;
+    }
+
+    public synchronized long bytes() {
+        return out.size();
+    }
+
+    // Bed facing and part travel along so the replay can rebuild the other half
+    public synchronized void interactBlock(Player player, Block block) {
+        if (!begin(INTERACT_BLOCK)) return;
+        try {
+            writeEntity(player);
+            writeBlock(block);
+            writeString(block.getType().name());
+            BlockData data = block.getBlockData();
+            out.writeByte(data instanceof Bed bed ? bed.getFacing().ordinal() : -1);
+            out.writeByte(data instanceof Bed bed ? bed.getPart().ordinal() : -1);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    public synchronized void blockPlace(Player player, Block block) {
+        playerBlock(BLOCK_PLACE, player, block);
+    }
+
+    public synchronized void blockBreak(Player player, Block block) {
+        playerBlock(BLOCK_BREAK, player, block);
+    }
+
+    public synchronized void projectileLaunch(Projectile projectile) {
+        if (!begin(PROJECTILE_LAUNCH)) return;
+        try {
+            writeEntity(projectile);
+            ProjectileSource shooter = projectile.getShooter();
+            if (shooter instanceof Entity entity) {
+                out.writeByte(SHOOTER_ENTITY);
+                writeEntity(entity);
+            } else if (shooter instanceof BlockProjectileSource source) {
+                out.writeByte(SHOOTER_BLOCK);
+                writeBlock(source.getBlock());
+            } else {
+                out.writeByte(SHOOTER_NONE);
+            }
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    public synchronized void tntSpawn(TNTPrimed tnt) {
+        if (!begin(TNT_SPAWN)) return;
+        try {
+            writeEntity(tnt);
+            writeOptionalEntity(tnt.getSource());
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    public synchronized void projectileHit(Projectile projectile, Entity hit) {
+        if (!begin(PROJECTILE_HIT)) return;
+        try {
+            writeEntity(projectile);
+            writeEntity(hit);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    // Since version 3 with the cause, an end crystal is removed before it explodes
+    public synchronized void entityRemove(Entity entity, int cause) {
+        if (!begin(ENTITY_REMOVE)) return;
+        try {
+            out.writeInt(entity.getEntityId());
+            out.writeByte(cause);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    public synchronized void damage(Entity victim, Entity damager) {
+        if (!begin(DAMAGE)) return;
+        try {
+            writeEntity(victim);
+            writeFramedItem(victim);
+            writeEntity(damager);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    public synchronized void interactEntity(Player player, Entity clicked) {
+        if (!begin(INTERACT_ENTITY)) return;
+        try {
+            writeEntity(player);
+            writeEntity(clicked);
+            writeFramedItem(clicked);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    public synchronized void blockExplode(Block origin, List<Block> blocks) {
+        if (!begin(BLOCK_EXPLODE)) return;
+        try {
+            writeBlock(origin);
+            writeBlocks(blocks);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    // A mob's target stands in for the culprit of an otherwise unknown explosion
+    public synchronized void entityExplode(Entity entity, Location location, List<Block> blocks) {
+        if (!begin(ENTITY_EXPLODE)) return;
+        try {
+            writeEntity(entity);
+            writeOptionalEntity(entity instanceof Mob mob ? mob.getTarget() : null);
+            writeLocation(location);
+            writeBlocks(blocks);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    public synchronized void blockIgnite(Block block, int cause, Entity ignitingEntity, Block ignitingBlock) {
+        if (!begin(BLOCK_IGNITE)) return;
+        try {
+            writeBlock(block);
+            out.writeByte(cause);
+            writeOptionalEntity(ignitingEntity);
+            writeOptionalBlock(ignitingBlock);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    public synchronized void blockBurn(Block block, Block ignitingBlock) {
+        if (!begin(BLOCK_BURN)) return;
+        try {
+            writeBlock(block);
+            writeString(block.getType().name());
+            writeOptionalBlock(ignitingBlock);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    public synchronized void hangingBreak(Entity hanging, int cause) {
+        if (!begin(HANGING_BREAK)) return;
+        try {
+            writeEntity(hanging);
+            out.writeByte(cause);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    public synchronized void piston(Block piston, BlockFace direction, boolean extend, List<Block> blocks) {
+        if (!begin(PISTON)) return;
+        try {
+            writeBlock(piston);
+            out.writeByte(direction.ordinal());
+            out.writeBoolean(extend);
+            writeBlocks(blocks);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    public synchronized void dispense(Block dispenser, Material item) {
+        if (!begin(DISPENSE)) return;
+        try {
+            writeBlock(dispenser);
+            writeString(dispenser.getType().name());
+            writeString(item.name());
+            out.writeByte(dispenser.getBlockData() instanceof Directional directional ? directional.getFacing().ordinal() : -1);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    // The user an explosion was logged under, keyed by the first block of its crater
+    public synchronized void outcome(Block first, String user) {
+        if (!begin(OUTCOME)) return;
+        try {
+            writeBlock(first);
+            writeString(user);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    private void playerBlock(byte type, Player player, Block block) {
+        if (!begin(type)) return;
+        try {
+            writeEntity(player);
+            writeBlock(block);
+            writeString(block.getType().name());
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    private boolean begin(byte type) {
+        if (closed) return false;
+        if (out.size() >= maxBytes) {
+            logger.warning("Trace " + file + " reached its size cap, recording stopped");
+            close();
+            return false;
+        }
+        try {
+            out.writeByte(type);
+            out.writeInt((int) (System.currentTimeMillis() - started));
+            records++;
+            return true;
+        } catch (IOException ex) {
+            fail(ex);
+            return false;
+        }
+    }
+
+    private void fail(IOException ex) {
+        logger.warning("Failed to write trace " + file + ", recording stopped: " + ex.getMessage());
+        close();
+    }
+
+    private void writeString(String value) throws IOException {
+        Integer id = strings.get(value);
+        if (id != null) {
+            out.writeInt(id);
+            return;
+        }
+        strings.put(value, strings.size());
+        out.writeInt(-1);
+        out.writeUTF(value);
+    }
+
+    private void writeEntity(Entity entity) throws IOException {
+        out.writeInt(entity.getEntityId());
+        writeString(entity.getType().name());
+        writeString(entity.getName());
+        writeLocation(entity.getLocation());
+    }
+
+    private void writeOptionalEntity(Entity entity) throws IOException {
+        out.writeBoolean(entity != null);
+        if (entity != null) writeEntity(entity);
+    }
+
+    private void writeLocation(Location location) throws IOException {
+        writeString(location.getWorld().getName());
+        out.writeDouble(location.getX());
+        out.writeDouble(location.getY());
+        out.writeDouble(location.getZ());
+    }
+
+    private void writeBlock(Block block) throws IOException {
+        writeString(block.getWorld().getName());
+        out.writeInt(block.getX());
+        out.writeInt(block.getY());
+        out.writeInt(block.getZ());
+    }
+
+    private void writeOptionalBlock(Block block) throws IOException {
+        out.writeBoolean(block != null);
+        if (block != null) writeBlock(block);
+    }
+
+    // Blocks share the world of the first one: count, world, then (x, y, z, material) each
+    private void writeBlocks(List<Block> blocks) throws IOException {
+        out.writeInt(blocks.size());
+        if (blocks.isEmpty()) return;
+        writeString(blocks.get(0).getWorld().getName());
+        for (Block block : blocks) {
+            out.writeInt(block.getX());
+            out.writeInt(block.getY());
+            out.writeInt(block.getZ());
+            writeString(block.getType().name());
+        }
+    }
+
+    private void writeFramedItem(Entity entity) throws IOException {
+        Material item = entity instanceof ItemFrame frame ? frame.getItem().getType() : null;
+        out.writeBoolean(item != null);
+        if (item != null) writeString(item.name());
+    }
+}
@@ -1,22 +1,13 @@
 package org.makeacake;
 
-import org.bukkit.ChatColor;
-import org.bukkit.Location;
 import org.bukkit.configuration.Configuration;
 import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.entity.Entity;
-import org.bukkit.entity.Player;
 
 public class Util {
-    public static void broadcastNearPlayers(Location location, String message) {
-        if (message == null || message.isEmpty()) {
-            return; // Do not send empty message
-        }
-        String msg = ChatColor.translateAlternateColorCodes('&', message);
-        for (Entity around : location.getWorld().getNearbyEntities(location, 15, 15, 15, (entity) -> entity instanceof Player)) {
-            around.sendMessage(msg);
-        }
+    private static final boolean FOLIA = classExists("io.papermc.paper.threadedregions.RegionizedServer");
 
+    public static boolean isFolia() {
+        return FOLIA;
     }
 
     public static ConfigurationSection bakeConfigSection(Configuration configuration, String path) {
@@ -25,8 +16,17 @@ public class Util {
             section = configuration.createSection(path);
             section.set("enable", true);
             section.set("disable-unknown", true);
-            section.set("alert", ChatColor.RED + "Failed to read translation, configuration section missing!");
+            section.set("alert", "&cFailed to read translation, configuration section missing!");
         }
         return section;
     }
+
+    private static boolean classExists(String name) {
+        try {
+            Class.forName(name);
+            return true;
+        } catch (ClassNotFoundException ex) {
+            return false;
+        }
+    }
 }
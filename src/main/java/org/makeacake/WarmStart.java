@@ -0,0 +1,164 @@
+package org.makeacake;
+
+import net.coreprotect.CoreProtectAPI;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Tag;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fills the block store from CoreProtect history after a restart, so TNT, beds and fire sources placed shortly
+ * before it are not treated as unknown. Loaded chunks are covered by square lookup areas of the configured
+ * radius, each one a page queried on a small pool of its own; results are grouped per shard and restored on the
+ * region owning it, keeping their original time so they expire like any other entry and never replace a newer one.
+ */
+public class WarmStart {
+
+    private static final List<Integer> PLACEMENTS = List.of(1);
+
+    private final Plugin plugin;
+    private final CoreProtectAPI api;
+    private final LocationStore store;
+    private final ReasonDictionary reasons;
+    private final Metrics.Timer lookupTimer;
+    private final Logger logger;
+
+    private final AtomicInteger pagesDone = new AtomicInteger();
+    private final AtomicLong restored = new AtomicLong();
+    private volatile int pagesTotal;
+    private volatile long elapsedMillis;
+    private ExecutorService pool;
+
+    public WarmStart(Plugin plugin, CoreProtectAPI api, LocationStore store, ReasonDictionary reasons, Metrics metrics) {
+        this.plugin = plugin;
+        this.api = api;
+        this.store = store;
+        this.reasons = reasons;
+        this.lookupTimer = metrics.timer("warm-start-lookup");
+        this.logger = plugin.getLogger();
+    }
+
+    // Folia does not let us walk loaded chunks here, it falls back to the spawn area of every world
+    public void start(int minutes, int radius, int threads) {
+        List<Location> areas = new ArrayList<>();
+        for (World world : Bukkit.getWorlds()) {
+            if (Util.isFolia()) {
+                areas.add(world.getSpawnLocation());
+                continue;
+            }
+            Set<Long> cells = new LinkedHashSet<>();
+            int side = radius * 2 + 1;
+            for (Chunk chunk : world.getLoadedChunks()) {
+                cells.add(LocationStore.chunkKey(Math.floorDiv(chunk.getX() * 16 + 8, side), Math.floorDiv(chunk.getZ() * 16 + 8, side)));
+            }
+            for (long cell : cells) {
+                int cellX = (int) cell, cellZ = (int) (cell >> 32);
+                areas.add(new Location(world, cellX * side + radius, 0, cellZ * side + radius));
+            }
+        }
+        pagesTotal = areas.size();
+        if (areas.isEmpty()) return;
+        logger.info("Warming up attributions from the last " + minutes + " minutes of CoreProtect history in " + areas.size() + " areas");
+
+        List<Object> materials = materials();
+        long started = System.nanoTime();
+        AtomicInteger threadIds = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "CPTNTExt-WarmStart-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Location area : areas) {
+            pool.execute(() -> {
+                try {
+                    load(area, minutes, radius, materials);
+                } catch (Throwable t) {
+                    logger.log(Level.WARNING, "Warm start lookup around " + area.getBlockX() + "," + area.getBlockZ() + " failed", t);
+                }
+                int done = pagesDone.incrementAndGet();
+                if (done == pagesTotal) {
+                    elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                    logger.info("Warm start restored " + restored.get() + " attributions from " + done + " areas in " + elapsedMillis + " ms");
+                    pool.shutdown();
+                } else if (done % Math.max(1, pagesTotal / 10) == 0) {
+                    logger.info("Warm start: " + done + "/" + pagesTotal + " areas, " + restored.get() + " attributions so far");
+                }
+            });
+        }
+    }
+
+    public void shutdown() {
+        if (pool != null) pool.shutdownNow();
+    }
+
+    public int pagesDone() {
+        return pagesDone.get();
+    }
+
+    public int pagesTotal() {
+        return pagesTotal;
+    }
+
+    public long restored() {
+        return restored.get();
+    }
+
+    public long elapsedMillis() {
+        return elapsedMillis;
+    }
+
+    private void load(Location area, int minutes, int radius, List<Object> materials) {
+        long started = System.nanoTime();
+        List<String[]> rows = api.performLookup((int) TimeUnit.MINUTES.toSeconds(minutes), null, null, materials, null, PLACEMENTS, radius, area);
+        lookupTimer.record(System.nanoTime() - started);
+        if (rows == null || rows.isEmpty()) return;
+
+        World world = area.getWorld();
+        Map<Long, List<Entry>> byShard = new HashMap<>();
+        for (String[] row : rows) {
+            CoreProtectAPI.ParseResult result = api.parseResult(row);
+            if (result.isRolledBack() || result.getActionId() != 1) continue;
+            String player = result.getPlayer();
+            // Placements by non-players ("#fire", "#dispenser") carry no one to attribute to
+            if (player == null || player.isEmpty() || player.startsWith("#")) continue;
+            if (!world.getName().equals(result.worldName())) continue;
+            Entry entry = new Entry(result.getX(), result.getY(), result.getZ(), reasons.actor(player), result.getTimestamp());
+            byShard.computeIfAbsent(LocationStore.shardKey(entry.x >> 4, entry.z >> 4), key -> new ArrayList<>()).add(entry);
+        }
+        for (List<Entry> entries : byShard.values()) {
+            Entry first = entries.get(0);
+            Bukkit.getRegionScheduler().execute(plugin, world, first.x >> 4, first.z >> 4, () -> {
+                for (Entry entry : entries) store.restore(world.getUID(), entry.x, entry.y, entry.z, entry.reason, entry.time);
+                restored.addAndGet(entries.size());
+            });
+        }
+    }
+
+    // Blocks that explode or start fires when a player uses them
+    private static List<Object> materials() {
+        List<Object> materials = new ArrayList<>(List.of(Material.TNT, Material.RESPAWN_ANCHOR, Material.FIRE,
+                Material.SOUL_FIRE, Material.LAVA, Material.CAMPFIRE, Material.SOUL_CAMPFIRE));
+        materials.addAll(Tag.BEDS.getValues());
+        return materials;
+    }
+
+    private record Entry(int x, int y, int z, int reason, long time) {
+    }
+}